@@ -8,7 +8,7 @@ public class BadBoard extends Board {
 
     @Override
     public int getMaxHeight() {
-        if (grid[0][0])
+        if (super.getGrid(0, 0))
             return 0;
         else
             return super.getMaxHeight();
@@ -1,8 +1,8 @@
 // Board.java
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import static com.sun.tools.javac.jvm.ByteCodes.swap;
 
 /**
  CS108 Tetris Board.
@@ -11,49 +11,145 @@ import static com.sun.tools.javac.jvm.ByteCodes.swap;
  Has an "undo" feature that allows clients to add and remove pieces efficiently.
  Does not do any drawing or have any idea of pixels. Instead,
  just represents the abstract 2-d board.
+
+ <p>
+ The grid is stored as a bitboard: every row is one or more
+ 64-bit words, bit x of a row's words set when column x is filled.
+ The words live in a RowStore chosen for the board width when the
+ board is made (see RowStore.forWidth()).
 */
 public class Board	{
 	// Some ivars are stubbed out for you:
 	private int width;
 	private int height;
-	protected boolean[][] grid;
-	private boolean DEBUG = true;
+	private RowStore rows;
+	private int words;		// 64-bit words per row
+	private long lastWordMask;	// valid bits of the last word of a row
+	private boolean DEBUG = false;
 	boolean committed;
 	protected int[] heightsArr;
 	protected int[] widthsArr;
 	private int maxHeight;
+	private long hash;		// Zobrist hash, see getHash()
+
+	// hole counting, kept up to date by place/clearRows/undo -- the
+	// other features are computed on demand, see getBumpiness()
+	private int[] colCounts;	// filled blocks per column
+	private int filledCells;
+	private int heightSum;
+
+	// undo journal -- only what place()/clearRows() changed since the
+	// last commit. Entries are pushed payload first, op code last, so
+	// undo() pops them in reverse.
+	private int[] journal;
+	private int journalSize;
+
+	// nested transactions -- journal size at each pushTransaction()
+	private int[] marks;
+	private int depth;
+	private int commitMark;	// journal size at the last commit
+
+	// rows that became full since the last clearRows() lie in [fullMin, fullMax]
+	private int fullMin;
+	private int fullMax;
+	private long[] pending;	// scratch column mask for clearRows()
 
-	//backups
-	private boolean[][] gridBackup;
-	private int[] heightsArrBackup;
-	private int[] widthsArrBackup;
-	private int maxHeightBackup;
+	// publishing mode -- commit() hands a snapshot to other threads
+	private boolean publishing;
+	private volatile BoardSnapshot published;
+
+	private static final int OP_CELL = 0;		// x, y
+	private static final int OP_HEIGHT = 1;		// x, old height
+	private static final int OP_MAX = 2;		// old max height
+	private static final int OP_ROWS = 3;		// old widths..., from, to
+	private static final int OP_HEIGHTS = 4;	// old heights...
+	private static final int OP_HASH = 5;		// old hash low, high
+	private static final int OP_FEATURES = 6;	// rows cleared, old heightSum
 	
 	/**
 	 Creates an empty board of the given width and height
 	 measured in blocks.
 	*/
 	public Board(int width, int height) {
+		this(width, height, RowStore.forWidth(width, height));
+	}
+
+	/**
+	 Creates an empty board on the given row storage.
+	*/
+	Board(int width, int height, RowStore rows) {
 		this.width = width;
 		this.height = height;
-		grid = new boolean[width][height];
+		this.rows = rows;
+		words = rows.words;
+		lastWordMask = rows.lastWordMask;
 		committed = true;
 		heightsArr = new int[width];
 		Arrays.fill(heightsArr, 0);
-		widthsArr = new int[height];
-		Arrays.fill(widthsArr, 0);
+		widthsArr = new int[rows.capacity];	// grows with the rows, see ensureRows()
 		maxHeight = 0;
+		hash = 0;
+		colCounts = new int[width];
+		filledCells = 0;
+		heightSum = 0;
 
-		//backups
-		gridBackup = new boolean[width][height];
-		heightsArrBackup = new int[width];
-		Arrays.fill(heightsArrBackup, 0);
-		widthsArrBackup = new int[height];
-		Arrays.fill(widthsArrBackup, 0);
-		maxHeightBackup = 0;
+		journal = new int[64];
+		journalSize = 0;
+		marks = new int[16];
+		depth = 0;
+		commitMark = 0;
+		fullMin = Integer.MAX_VALUE;
+		fullMax = -1;
+		pending = new long[words];
+	}
+
+	/**
+	 Creates a committed board holding the blocks of a snapshot.
+	*/
+	Board(BoardSnapshot s) {
+		this(s.width, s.height, s.rows.share(s.maxHeight));
+		heightsArr = s.heights.clone();
+		widthsArr = Arrays.copyOf(s.widths, rows.capacity);
+		maxHeight = s.maxHeight;
+		hash = s.hash;
+		colCounts = s.colCounts.clone();
+		filledCells = s.filledCells;
+		heightSum = s.heightSum;
+		for (int y = 0; y < maxHeight; y++) {
+			if (widthsArr[y] == width) {
+				fullMin = Math.min(fullMin, y);
+				fullMax = y;
+			}
+		}
 	}
 	
 	
+	/**
+	 Empties the board and forgets its undo history and transactions,
+	 keeping the storage it has -- so a board can be reused rather
+	 than reallocated (see BoardPool).
+	*/
+	public void reset() {
+		rows.wipe(rows.capacity);
+		rows.clearSaved();
+		committed = true;
+		Arrays.fill(heightsArr, 0);
+		Arrays.fill(widthsArr, 0);
+		maxHeight = 0;
+		hash = 0;
+		Arrays.fill(colCounts, 0);
+		filledCells = 0;
+		heightSum = 0;
+
+		journalSize = 0;
+		depth = 0;
+		commitMark = 0;
+		fullMin = Integer.MAX_VALUE;
+		fullMax = -1;
+		if (publishing) published = snapshot();
+	}
+
+
 	/**
 	 Returns the width of the board in blocks.
 	*/
@@ -71,11 +167,152 @@ public class Board	{
 	 For an empty board this is 0.
 	*/
 	public int getMaxHeight() { return maxHeight; }
+
+
+	/**
+	 Returns a 64-bit Zobrist hash of the filled blocks.
+	 Boards with the same blocks filled have the same hash,
+	 whatever moves produced them, so this can key transposition
+	 tables and evaluation caches. Kept up to date by place(),
+	 clearRows() and undo(), so it costs O(1).
+	*/
+	public long getHash() { return hash; }
+
+
+	/**
+	 Returns the number of empty blocks below the top of the
+	 given column.
+	*/
+	public int getColumnHoles(int x) {
+		return heightsArr[x] - colCounts[x];
+	}
+
+
+	/**
+	 Returns the number of holes in the whole board --
+	 empty blocks with a filled block somewhere above them.
+	*/
+	public int getHoles() {
+		return heightSum - filledCells;
+	}
+
+
+	/**
+	 Returns the sum of all the column heights.
+	*/
+	public int getHeightSum() {
+		return heightSum;
+	}
+
+
+	/**
+	 Returns the height difference between column x+1 and column x.
+	*/
+	public int getHeightDelta(int x) {
+		return heightsArr[x + 1] - heightsArr[x];
+	}
+
+
+	/**
+	 Returns the bumpiness of the board -- the sum of the absolute
+	 height differences between neighbouring columns.
+	 Computed on demand from the column heights, O(width).
+	*/
+	public int getBumpiness() {
+		int bumpiness = 0;
+		for (int x = 1; x < width; x++)
+			bumpiness += Math.abs(heightsArr[x] - heightsArr[x - 1]);
+		return bumpiness;
+	}
+
+
+	/**
+	 Returns how far the given column sits below both of its
+	 neighbours, or 0. The side walls count as full height.
+	*/
+	public int getWellDepth(int x) {
+		int left = x == 0 ? height : heightsArr[x - 1];
+		int right = x == width - 1 ? height : heightsArr[x + 1];
+		return Math.max(0, Math.min(left, right) - heightsArr[x]);
+	}
+
+
+	/**
+	 Returns the sum of getWellDepth() over all columns, O(width).
+	*/
+	public int getWellSum() {
+		int wellSum = 0;
+		for (int x = 0; x < width; x++)
+			wellSum += getWellDepth(x);
+		return wellSum;
+	}
+
+
+	/**
+	 Returns the number of filled/empty changes walking across
+	 the given row, counting the side walls as filled.
+	 An empty row has 2, a full row 0.
+	*/
+	public int getRowTransitions(int y) {
+		int count = 0;
+		long carry = 1;	// left wall
+		for (int w = 0; w < words; w++) {
+			long bits = rows.word(y, w);
+			long mask = w == words - 1 ? lastWordMask : -1L;
+			count += Long.bitCount((bits ^ ((bits << 1) | carry)) & mask);
+			carry = bits >>> 63;
+		}
+		if (!isFilled(width - 1, y)) count++;	// right wall
+		return count;
+	}
+
+
+	/**
+	 Returns the sum of getRowTransitions() over every row.
+	 Rows above the max height are empty and count 2 each, so
+	 this costs one pass over the words of the rows below it.
+	*/
+	public int getRowTransitions() {
+		int transitions = 2 * (height - maxHeight);
+		for (int y = 0; y < maxHeight; y++)
+			transitions += getRowTransitions(y);
+		return transitions;
+	}
+
+
+	/**
+	 The random key of one cell. A SplitMix64 finalizer of the
+	 coordinates -- a fixed pseudo-random value for each (x, y), so
+	 boards of any size agree on keys without a stored table.
+	*/
+	static long cellKey(int x, int y) {
+		long z = (((long)y << 32) | x) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// XOR of the keys of every filled cell in rows [from, to).
+	private long rowsHash(int from, int to) {
+		long h = 0;
+		for (int y = from; y < to; y++) {
+			for (int w = 0; w < words; w++) {
+				long bits = rows.word(y, w);
+				while (bits != 0) {
+					h ^= cellKey((w << 6) + Long.numberOfTrailingZeros(bits), y);
+					bits &= bits - 1;
+				}
+			}
+		}
+		return h;
+	}
 	
 	
 	/**
 	 Checks the board for internal consistency -- used
-	 for debugging.
+	 for debugging. Does nothing unless debug mode is on.
+	 Board itself never calls this; wrap a board in a
+	 CheckedBoard to have every change verified.
 	*/
 	public void sanityCheck() {
 		if (!DEBUG)
@@ -85,7 +322,7 @@ public class Board	{
 		int maxH = Integer.MIN_VALUE;
 		for (int i = 0; i < width; i++) {
 			for (int j = 0; j < height; j++) {
-				if (grid[i][j]) {
+				if (isFilled(i, j)) {
 					hArr[i] = j + 1;
 					wArr[j]++;
 				}
@@ -95,11 +332,30 @@ public class Board	{
 		if (maxH != getMaxHeight())
 			throw new RuntimeException("Max Height is invalid. expected: " + maxH + "; got: " + maxHeight );
 
-		if (!Arrays.equals(wArr, widthsArr))
-			throw new RuntimeException("Widths array is invalid");
+		for (int j = 0; j < height; j++) {
+			if (wArr[j] != (j < widthsArr.length ? widthsArr[j] : 0))
+				throw new RuntimeException("Widths array is invalid");
+		}
 
 		if (!Arrays.equals(hArr, heightsArr))
 			throw new RuntimeException("Heights array is invalid");
+
+		if (rowsHash(0, height) != hash)
+			throw new RuntimeException("Hash is invalid");
+
+		int cells = 0, hSum = 0;
+		for (int i = 0; i < width; i++) {
+			int count = 0;
+			for (int j = 0; j < height; j++) {
+				if (isFilled(i, j)) count++;
+			}
+			if (count != colCounts[i])
+				throw new RuntimeException("Column counts are invalid");
+			cells += count;
+			hSum += hArr[i];
+		}
+		if (cells != filledCells || hSum != heightSum)
+			throw new RuntimeException("Features are invalid");
 	}
 	
 	/**
@@ -121,6 +377,52 @@ public class Board	{
 	}
 	
 	
+	/**
+	 Fills out[x] with dropHeight(piece, x) for every x where the
+	 piece fits across the board, 0 .. width - piece.getWidth().
+	 Sweeps the column heights once per skirt column instead of
+	 re-reading every overlapping window as dropHeight() would.
+	*/
+	public void dropHeights(Piece piece, int[] out) {
+		sweepDropHeights(piece.getSkirt(), 0, piece.getWidth(),
+				width - piece.getWidth() + 1, out, 0);
+	}
+
+
+	/**
+	 Fills out[i] with dropHeight() of every candidate in the
+	 placement table, one sweep per rotation.
+	 The table must be made for this board's width.
+	*/
+	public void dropHeights(Piece.Placements placements, int[] out) {
+		if (placements.boardWidth != width)
+			throw new RuntimeException("placements for width " + placements.boardWidth + " on board of width " + width);
+		int i = 0;
+		while (i < placements.count) {
+			int len = placements.pieces[i].getWidth();
+			int n = width - len + 1;	// candidates of this rotation
+			sweepDropHeights(placements.skirts, placements.skirtStart[i], len, n, out, i);
+			i += n;
+		}
+	}
+
+	/**
+	 out[off + x] = max over j of heightsArr[x + j] - skirt[start + j],
+	 for x in [0, n). Loops over x innermost so each pass is a
+	 straight run over the heights array.
+	*/
+	private void sweepDropHeights(int[] skirt, int start, int len, int n, int[] out, int off) {
+		int s = skirt[start];
+		for (int x = 0; x < n; x++)
+			out[off + x] = heightsArr[x] - s;
+		for (int j = 1; j < len; j++) {
+			s = skirt[start + j];
+			for (int x = 0; x < n; x++)
+				out[off + x] = Math.max(out[off + x], heightsArr[x + j] - s);
+		}
+	}
+	
+	
 	/**
 	 Returns the height of the given column --
 	 i.e. the y value of the highest block + 1.
@@ -136,7 +438,7 @@ public class Board	{
 	 the given row.
 	*/
 	public int getRowWidth(int y) {
-		 return widthsArr[y];
+		 return y < widthsArr.length ? widthsArr[y] : 0;
 	}
 	
 	
@@ -146,7 +448,103 @@ public class Board	{
 	 always return true.
 	*/
 	public boolean getGrid(int x, int y) {
-		return !inBounds(x, y) || grid[x][y];
+		return !inBounds(x, y) || isFilled(x, y);
+	}
+
+	// Bit test for an in-bounds cell.
+	private boolean isFilled(int x, int y) {
+		return rows.get(x, y);
+	}
+
+	/**
+	 Returns true if every block of the given row is filled.
+	 Compares whole words against the full-row mask.
+	*/
+	private boolean isRowFull(int y) {
+		return rows.isFull(y);
+	}
+
+
+	/**
+	 Returns true if the piece fits at the given position --
+	 every block in bounds and on an empty cell.
+	 Does not change the board, so it may be called in any
+	 committed state, as often as needed.
+	*/
+	public boolean canPlace(Piece piece, int x, int y) {
+		long[] masks = piece.getRowMasks();
+		if (masks != null)
+			return masksInBounds(piece, x, y) && masksFit(masks, x, y);
+
+		int boardX, boardY;
+		for (TPoint pt : piece.getBody()) {
+			boardX = x + pt.x;
+			boardY = y + pt.y;
+			if (!inBounds(boardX, boardY) || isFilled(boardX, boardY))
+				return false;
+		}
+		return true;
+	}
+
+
+	// True if a piece with row masks lies inside the board at (x, y).
+	private boolean masksInBounds(Piece piece, int x, int y) {
+		return x >= 0 && y >= 0 && x + piece.getWidth() <= width && y + piece.getHeight() <= height;
+	}
+
+	// True if the row masks, shifted to column x, miss every filled
+	// cell of rows y and up -- one AND per word the piece touches.
+	private boolean masksFit(long[] masks, int x, int y) {
+		int w = x >>> 6;
+		int shift = x & 63;
+		for (int i = 0; i < masks.length; i++) {
+			if ((rows.word(y + i, w) & (masks[i] << shift)) != 0)
+				return false;
+			if (shift != 0 && w + 1 < words && (rows.word(y + i, w + 1) & (masks[i] >>> (64 - shift))) != 0)
+				return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 Given a piece that fits at (x, y), returns the y where it comes
+	 to rest if it falls straight down from there. Unlike dropHeight(),
+	 this honors overhangs above the landing spot.
+	 Does not change the board.
+	*/
+	public int landingY(Piece piece, int x, int y) {
+		while (canPlace(piece, x, y - 1))
+			y--;
+		return y;
+	}
+
+
+	/**
+	 Returns which rows placing the piece at (x, y) would fill,
+	 as a bit mask where bit i stands for row y+i -- 0 if none.
+	 i is the y of the body points in that row, so rows of a body
+	 that reach below its origin are not counted.
+	 The piece is assumed to fit there (see canPlace()).
+	 Does not change the board.
+	*/
+	public int rowsFilled(Piece piece, int x, int y) {
+		TPoint[] body = piece.getBody();
+		long[] masks = piece.getRowMasks();
+		int mask = 0;
+		for (int i = 0; i < piece.getTop(); i++) {
+			int count = 0;
+			if (masks != null) {
+				count = Long.bitCount(masks[i]);
+			} else {
+				for (TPoint pt : body) {
+					if (pt.y == i) count++;
+				}
+			}
+			if (count > 0 && getRowWidth(y + i) + count == width)
+				mask |= 1 << i;
+		}
+		return mask;
 	}
 	
 	
@@ -172,8 +570,13 @@ public class Board	{
 	public int place(Piece piece, int x, int y) {
 		// flag !committed problem
 		if (!committed) throw new RuntimeException("place commit problem");
-		saveState();
 		committed = false;
+		log(maxHeight, OP_MAX);
+		ensureRows(Math.min(height, y + piece.getTop()));
+
+		long[] masks = piece.getRowMasks();
+		if (masks != null)
+			return placeMasks(piece, masks, x, y);
 
 		int boardX, boardY;
 		int res = PLACE_OK;
@@ -182,26 +585,122 @@ public class Board	{
 			boardY = y + pt.y;
 			if (!inBounds(boardX, boardY))
 				return PLACE_OUT_BOUNDS;
-			if (grid[boardX][boardY])
+			if (rows.get(boardX, boardY))
 				return PLACE_BAD;
-			grid[boardX][boardY] = true;
-			heightsArr[boardX] = Math.max (heightsArr[boardX], boardY + 1);
-			maxHeight = Math.max(maxHeight, heightsArr[boardX]);
-			if (++widthsArr[boardY] == width) {
-				res =  PLACE_ROW_FILLED;
-			}
+			rows.set(boardX, boardY);
+			addCell(boardX, boardY);
+			if (++widthsArr[boardY] == width)
+				res = rowFilled(boardY);
 		}
-		sanityCheck();
 		return res;
 	}
 
-	private void saveState() {
-		maxHeightBackup  = maxHeight;
-		System.arraycopy(heightsArr, 0, heightsArrBackup, 0, width);
-		System.arraycopy(widthsArr, 0, widthsArrBackup, 0, height);
-		for (int i = 0; i < width; i++) {
-			System.arraycopy(grid[i], 0, gridBackup[i], 0, height);
+	/*
+	 place() for pieces with row masks: bounds and collisions are
+	 checked up front with a few ANDs, so a failed placement leaves
+	 the board as it was, and each row is filled with one OR per word.
+	*/
+	private int placeMasks(Piece piece, long[] masks, int x, int y) {
+		if (!masksInBounds(piece, x, y))
+			return PLACE_OUT_BOUNDS;
+		if (!masksFit(masks, x, y))
+			return PLACE_BAD;
+
+		int w = x >>> 6;
+		int shift = x & 63;
+		int res = PLACE_OK;
+		for (int i = 0; i < masks.length; i++) {
+			int boardY = y + i;
+			long mask = masks[i];
+			rows.orWord(boardY, w, mask << shift);
+			if (shift != 0 && (mask >>> (64 - shift)) != 0)
+				rows.orWord(boardY, w + 1, mask >>> (64 - shift));
+			for (long m = mask; m != 0; m &= m - 1)
+				addCell(x + Long.numberOfTrailingZeros(m), boardY);
+			widthsArr[boardY] += Long.bitCount(mask);
+			if (widthsArr[boardY] == width)
+				res = rowFilled(boardY);
 		}
+		return res;
+	}
+
+	// Bookkeeping for one newly filled cell, other than its row.
+	private void addCell(int x, int y) {
+		hash ^= cellKey(x, y);
+		colCounts[x]++;
+		filledCells++;
+		log(x, y, OP_CELL);
+		if (heightsArr[x] < y + 1) {
+			log(x, heightsArr[x], OP_HEIGHT);
+			setColumnHeight(x, y + 1);
+		}
+		maxHeight = Math.max(maxHeight, heightsArr[x]);
+	}
+
+	// Notes that row y became full; returns PLACE_ROW_FILLED.
+	private int rowFilled(int y) {
+		fullMin = Math.min(fullMin, y);
+		fullMax = Math.max(fullMax, y);
+		return PLACE_ROW_FILLED;
+	}
+
+	// Materializes rows [0, n) of the grid and widths array.
+	private void ensureRows(int n) {
+		if (n <= widthsArr.length) return;
+		rows.ensureRows(n);
+		widthsArr = Arrays.copyOf(widthsArr, rows.capacity);
+	}
+
+	// Sets one column height, keeping the height sum.
+	private void setColumnHeight(int x, int h) {
+		heightSum += h - heightsArr[x];
+		heightsArr[x] = h;
+	}
+
+	// Recomputes the height sum after a bulk height change.
+	private void computeHeightSum() {
+		heightSum = 0;
+		for (int x = 0; x < width; x++)
+			heightSum += heightsArr[x];
+	}
+
+	// Journal helpers -- push a payload followed by its op code.
+	private void log(int a, int op) {
+		ensureJournal(2);
+		journal[journalSize++] = a;
+		journal[journalSize++] = op;
+	}
+
+	private void log(int a, int b, int op) {
+		ensureJournal(3);
+		journal[journalSize++] = a;
+		journal[journalSize++] = b;
+		journal[journalSize++] = op;
+	}
+
+	private void ensureJournal(int extra) {
+		if (journalSize + extra > journal.length)
+			journal = Arrays.copyOf(journal, Math.max(journal.length * 2, journalSize + extra));
+	}
+
+	/**
+	 Captures rows [from, to) -- through the RowStore -- and their
+	 widths, plus the column heights, so undo() can put a clear back.
+	*/
+	private void logRows(int from, int to) {
+		rows.saveRows(from, to);
+
+		ensureJournal(to - from + 3);
+		System.arraycopy(widthsArr, from, journal, journalSize, to - from);
+		journalSize += to - from;
+		journal[journalSize++] = from;
+		journal[journalSize++] = to;
+		journal[journalSize++] = OP_ROWS;
+
+		ensureJournal(width + 1);
+		System.arraycopy(heightsArr, 0, journal, journalSize, width);
+		journalSize += width;
+		journal[journalSize++] = OP_HEIGHTS;
 	}
 
 
@@ -215,57 +714,92 @@ public class Board	{
 	 things above down. Returns the number of rows cleared.
 	*/
 	public int clearRows() {
-		if (committed)
-			saveState();
 		committed = false;
+		// Only rows filled since the last clear can be full
+		int top = Math.min(fullMax, maxHeight - 1);
+		int first = fullMin;
+		while (first <= top && !isRowFull(first))
+			first++;
+		fullMin = Integer.MAX_VALUE;
+		fullMax = -1;
+		if (first > top)
+			return 0;	// nothing filled, nothing to log
+
+		log(maxHeight, OP_MAX);
+		log((int)hash, (int)(hash >>> 32), OP_HASH);
+		int featuresAt = journalSize;
+		ensureJournal(3);
+		journalSize += 3;	// filled in once the cleared count is known
+		logRows(first, maxHeight);
+		hash ^= rowsHash(first, maxHeight);
 		int rowsCleared = 0;
-		int toRow = 0;
-		for (int i=0; i<maxHeight; i++) {
-			if (getRowWidth(i) != width) {
-				copyRow (toRow, i);
-				widthsArr[toRow] = getRowWidth(i);
-				toRow++;
-			} else {
+		int lastCleared = first;
+		for (int i=first; i<=top; i++) {
+			if (widthsArr[i] == width) {
 				rowsCleared ++;
+				lastCleared = i;
 			}
 		}
 		int oldMaxHeight = maxHeight;
-		adjustHeightsArr(rowsCleared);
-		adjustFalseRows(oldMaxHeight - maxHeight);
-		sanityCheck();
+		rows.removeRows(first, top, maxHeight, widthsArr);
+		adjustHeightsArr(rowsCleared, lastCleared);
+		hash ^= rowsHash(first, oldMaxHeight - rowsCleared);
+
+		journal[featuresAt] = rowsCleared;
+		journal[featuresAt + 1] = heightSum;
+		journal[featuresAt + 2] = OP_FEATURES;
+		for (int x = 0; x < width; x++)
+			colCounts[x] -= rowsCleared;
+		filledCells -= rowsCleared * width;
+		computeHeightSum();
 		return rowsCleared;
 	}
 
-	private void adjustHeightsArr(int rowsCleared) {
-		maxHeight = Integer.MIN_VALUE;
+	/**
+	 Fixes the column heights after a clear. A full row has a block
+	 in every column, so every column simply drops by rowsCleared,
+	 except the columns whose top block sat in the highest cleared row.
+	 Those are found with one downward sweep over the row words.
+	*/
+	private void adjustHeightsArr(int rowsCleared, int lastCleared) {
+		maxHeight = 0;
+		boolean anyPending = false;
 		for (int i = 0; i<heightsArr.length; i++) {
-			heightsArr[i] -= rowsCleared;
-			while (heightsArr[i]  - 1 >= 0 && !grid[i][heightsArr[i] - 1]){
-				heightsArr[i]--;
+			if (heightsArr[i] == lastCleared + 1) {
+				pending[i >>> 6] |= 1L << i;
+				heightsArr[i] = 0;
+				anyPending = true;
+			} else {
+				heightsArr[i] -= rowsCleared;
+				maxHeight = Math.max(maxHeight, heightsArr[i]);
 			}
-			maxHeight = Math.max(maxHeight, heightsArr[i]);
 		}
-	}
-
-	private void adjustFalseRows(int rowsCleared) {
-		for (int i = 0; i < rowsCleared; i++) {
-			widthsArr[maxHeight + i] = 0;
-			for (int j =0; j < width; j++)
-				grid[j][maxHeight + i] = false;
+		for (int y = lastCleared - rowsCleared; anyPending && y >= 0; y--) {
+			anyPending = false;
+			for (int w = 0; w < words; w++) {
+				long hit = rows.word(y, w) & pending[w];
+				if (hit != 0) {
+					pending[w] &= ~hit;
+					maxHeight = Math.max(maxHeight, y + 1);
+					while (hit != 0) {
+						heightsArr[(w << 6) + Long.numberOfTrailingZeros(hit)] = y + 1;
+						hit &= hit - 1;
+					}
+				}
+				anyPending |= pending[w] != 0;
+			}
 		}
+		Arrays.fill(pending, 0L);
 	}
 
-	private void copyRow(int toRow, int fromRow) {
-	//	System.out.println("to -> " + toRow + " from -> " + fromRow);
-		for (int i = 0; i < width; i++) {
-			grid[i][toRow] = grid[i][fromRow];
-		}
-	}
+
 
 
 	/**
 	 Reverts the board to its state before up to one place
 	 and one clearRows();
+	 Replays the undo journal backwards, so the cost is proportional
+	 to the cells and rows that changed, not to the board size.
 	 If the conditions for undo() are not met, such as
 	 calling undo() twice in a row, then the second undo() does nothing.
 	 See the overview docs.
@@ -273,33 +807,117 @@ public class Board	{
 	public void undo() {
 		if (committed)
 			return;
+		rewind(commitMark);
+		committed = true;
+	}
 
-		Object temp = grid;
-		grid = gridBackup;
-		gridBackup = (boolean[][])temp;
-
-		temp = heightsArr;
-		heightsArr = heightsArrBackup;
-		heightsArrBackup = (int[])temp;
+	/**
+	 Pops journal entries until the journal is back to the given size,
+	 reverting each change.
+	*/
+	private void rewind(int mark) {
+		while (journalSize > mark) {
+			switch (journal[--journalSize]) {
+				case OP_CELL: {
+					int y = journal[--journalSize];
+					int x = journal[--journalSize];
+					rows.unset(x, y);
+					widthsArr[y]--;
+					hash ^= cellKey(x, y);
+					colCounts[x]--;
+					filledCells--;
+					break;
+				}
+				case OP_HEIGHT: {
+					int old = journal[--journalSize];
+					setColumnHeight(journal[--journalSize], old);
+					break;
+				}
+				case OP_MAX:
+					maxHeight = journal[--journalSize];
+					break;
+				case OP_ROWS: {
+					int to = journal[--journalSize];
+					int from = journal[--journalSize];
+					journalSize -= to - from;
+					System.arraycopy(journal, journalSize, widthsArr, from, to - from);
+					rows.restoreRows(from, to, widthsArr);
+					// the restored rows may hold full rows again
+					fullMin = Math.min(fullMin, from);
+					fullMax = Math.max(fullMax, to - 1);
+					break;
+				}
+				case OP_HEIGHTS:
+					journalSize -= width;
+					System.arraycopy(journal, journalSize, heightsArr, 0, width);
+					break;
+				case OP_FEATURES: {
+					heightSum = journal[--journalSize];
+					int cleared = journal[--journalSize];
+					for (int x = 0; x < width; x++)
+						colCounts[x] += cleared;
+					filledCells += cleared * width;
+					break;
+				}
+				case OP_HASH: {
+					long high = journal[--journalSize];
+					hash = (high << 32) | (journal[--journalSize] & 0xFFFFFFFFL);
+					break;
+				}
+			}
+		}
+	}
 
-		temp = widthsArr;
-		widthsArr = widthsArrBackup;
-		widthsArrBackup = (int[])temp;
 
-		temp = maxHeight;
-		maxHeight = maxHeightBackup;
-		maxHeightBackup = maxHeight;
+	/**
+	 Opens a nested transaction. Any pending place()/clearRows() is
+	 kept as part of the enclosing level, and the board is put in the
+	 committed state so the next place() may proceed. Transactions
+	 nest to any depth and are unwound in LIFO order by popTransaction().
+	 Each level only holds the journal of the changes made inside it --
+	 typically one place() and one clearRows().
+	*/
+	public void pushTransaction() {
+		if (depth == marks.length)
+			marks = Arrays.copyOf(marks, marks.length * 2);
+		marks[depth++] = journalSize;
+		committed = true;
+		commitMark = journalSize;
+	}
 
+	/**
+	 Reverts everything done since the matching pushTransaction()
+	 and closes that level. The board is left in the committed state.
+	*/
+	public void popTransaction() {
+		if (depth == 0) throw new RuntimeException("pop without push");
+		depth--;
+		rewind(marks[depth]);
 		committed = true;
-		sanityCheck();
+		commitMark = journalSize;
+	}
+
+	/**
+	 Returns the number of open transactions.
+	*/
+	public int getTransactionDepth() {
+		return depth;
 	}
 
 
 	/**
 	 Puts the board in the committed state.
+	 Inside a transaction the changes are folded into the enclosing
+	 level, so popTransaction() can still revert them.
 	*/
 	public void commit() {
 		committed = true;
+		if (depth == 0) {
+			journalSize = 0;
+			rows.clearSaved();
+			if (publishing) published = snapshot();
+		}
+		commitMark = journalSize;
 	}
 
 	
@@ -323,6 +941,191 @@ public class Board	{
 		return(buff.toString());
 	}
 
+	/**
+	 Returns an immutable snapshot of the current blocks. Rows are
+	 shared with this board, which copies a row before it next writes
+	 it, so a snapshot is cheap enough to take every tick and can be
+	 handed to other threads.
+	*/
+	public BoardSnapshot snapshot() {
+		return new BoardSnapshot(width, height, rows.share(maxHeight), maxHeight,
+				heightsArr.clone(), Arrays.copyOf(widthsArr, maxHeight), hash,
+				colCounts.clone(), filledCells, heightSum);
+	}
+
+	/**
+	 Returns the number of bytes encode() writes for this board.
+	*/
+	public int encodedSize() {
+		return encodedSize(width, maxHeight);
+	}
+
+	/**
+	 Bytes needed to encode a board of the given width with
+	 the given number of rows.
+	*/
+	static int encodedSize(int width, int rows) {
+		return 12 + 4 * width + 8 * (int) (((long) width * rows + 63) >>> 6);
+	}
+
+	/**
+	 Writes a compact binary form of the board to the buffer:
+	 width, height, max height and column heights as ints, then
+	 the rows below the max height as one bit per cell, packed
+	 row after row into longs. See decode().
+	*/
+	public void encode(ByteBuffer out) {
+		out.putInt(width);
+		out.putInt(height);
+		out.putInt(maxHeight);
+		for (int x = 0; x < width; x++)
+			out.putInt(heightsArr[x]);
+
+		long acc = 0;	// bits not written yet
+		int fill = 0;	// how many
+		for (int y = 0; y < maxHeight; y++) {
+			for (int w = 0; w < words; w++) {
+				long bits = rows.word(y, w);
+				int n = Math.min(64, width - (w << 6));
+				acc |= bits << fill;
+				if (fill + n >= 64) {
+					out.putLong(acc);
+					acc = fill == 0 ? 0 : bits >>> (64 - fill);
+					fill += n - 64;
+				} else {
+					fill += n;
+				}
+			}
+		}
+		if (fill > 0) out.putLong(acc);
+	}
+
+	/**
+	 Reads a board written by encode(). The board comes back
+	 committed, with all its features recomputed.
+	*/
+	public static Board decode(ByteBuffer in) {
+		int width = in.getInt();
+		int height = in.getInt();
+		int maxHeight = in.getInt();
+		if (width <= 0 || height <= 0 || maxHeight < 0 || maxHeight > height)
+			throw new RuntimeException("bad board encoding: " + width + "x" + height + ", max height " + maxHeight);
+		int[] heights = new int[width];
+		for (int x = 0; x < width; x++)
+			heights[x] = in.getInt();
+
+		Board board = new Board(width, height);
+		board.ensureRows(maxHeight);
+		long acc = 0;	// bits not read yet
+		int avail = 0;	// how many
+		for (int y = 0; y < maxHeight; y++) {
+			for (int w = 0; w < board.words; w++) {
+				int n = Math.min(64, width - (w << 6));
+				long bits;
+				if (avail == 0) {
+					acc = in.getLong();
+					avail = 64;
+				}
+				if (avail >= n) {
+					bits = acc;
+					acc = n == 64 ? 0 : acc >>> n;
+					avail -= n;
+				} else {
+					long next = in.getLong();
+					bits = acc | (next << avail);
+					acc = next >>> (n - avail);
+					avail = 64 - (n - avail);
+				}
+				if (n < 64) bits &= (1L << n) - 1;
+				while (bits != 0) {
+					board.rows.set((w << 6) + Long.numberOfTrailingZeros(bits), y);
+					bits &= bits - 1;
+				}
+			}
+		}
+		board.rebuild();
+		if (board.maxHeight != maxHeight || !Arrays.equals(board.heightsArr, heights))
+			throw new RuntimeException("bad board encoding: heights do not match the rows");
+		return board;
+	}
+
+	/**
+	 Makes a committed board from single-word row masks --
+	 rows [0, count) are masks[from] to masks[from + count - 1].
+	 The width must be at most 64.
+	*/
+	static Board ofRows(int width, int height, long[] masks, int from, int count) {
+		Board board = new Board(width, height);
+		board.ensureRows(count);
+		for (int y = 0; y < count; y++) {
+			long bits = masks[from + y];
+			while (bits != 0) {
+				board.rows.set(Long.numberOfTrailingZeros(bits), y);
+				bits &= bits - 1;
+			}
+		}
+		board.rebuild();
+		return board;
+	}
+
+	// Recomputes everything kept alongside the rows from the rows.
+	private void rebuild() {
+		Arrays.fill(heightsArr, 0);
+		Arrays.fill(widthsArr, 0);
+		Arrays.fill(colCounts, 0);
+		maxHeight = 0;
+		hash = 0;
+		filledCells = 0;
+		fullMin = Integer.MAX_VALUE;
+		fullMax = -1;
+		for (int y = 0; y < widthsArr.length; y++) {
+			for (int w = 0; w < words; w++) {
+				long bits = rows.word(y, w);
+				while (bits != 0) {
+					int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+					widthsArr[y]++;
+					colCounts[x]++;
+					heightsArr[x] = y + 1;
+					hash ^= cellKey(x, y);
+					bits &= bits - 1;
+				}
+			}
+			if (widthsArr[y] == 0) continue;
+			maxHeight = y + 1;
+			filledCells += widthsArr[y];
+			if (widthsArr[y] == width) {
+				fullMin = Math.min(fullMin, y);
+				fullMax = y;
+			}
+		}
+		computeHeightSum();
+	}
+
+	/**
+	 Turns publishing on or off. While it is on, every outermost
+	 commit() publishes a snapshot of the committed board that
+	 getPublished() returns -- so brain, metrics or render threads
+	 can read a consistent board without locking out place()/undo().
+	 Off by default, since each publish makes a snapshot.
+	*/
+	public void setPublishing(boolean b) {
+		if (b == publishing) return;
+		publishing = b;
+		published = b && committed && depth == 0 ? snapshot() : null;
+	}
+
+	/**
+	 Returns the snapshot published by the last commit(), or null
+	 if publishing is off or nothing is published yet.
+	 Safe to call from any thread.
+	*/
+	public BoardSnapshot getPublished() {
+		return published;
+	}
+
+	/**
+	 Turns sanityCheck() on or off. Off by default.
+	*/
 	public void setDebugMode(boolean b) {
 		DEBUG = b;
 	}
@@ -0,0 +1,193 @@
+// BoardBatch.java
+
+import java.util.Arrays;
+
+/**
+ N boards of the same size stepped in lockstep, for simulating many
+ independent games on one core. Instead of N Board objects the batch
+ keeps each kind of state in one flat primitive array -- row masks,
+ column heights, row widths -- with board i at offset i*height or
+ i*width, so a step over every board walks memory in order.
+
+ <p>
+ Rows are one long each, so the width is limited to 64.
+ Placements use the pieces' packed points and skirts.
+ There is no undo: a batch only moves forward, and a board that
+ cannot take its piece is left as it was.
+*/
+public class BoardBatch {
+	private final int count;
+	private final int width;
+	private final int height;
+	private final long fullRow;
+	private final long[] rows;		// rows[i*height + y] is row y of board i
+	private final int[] widths;		// filled blocks in each row
+	private final int[] heights;	// heights[i*width + x] is column x of board i
+	private final int[] maxHeights;
+
+	/**
+	 Creates count empty boards of the given size.
+	*/
+	public BoardBatch(int count, int width, int height) {
+		if (width > 64) throw new RuntimeException("width " + width + " is too wide for a batch");
+		this.count = count;
+		this.width = width;
+		this.height = height;
+		fullRow = width == 64 ? -1L : (1L << width) - 1;
+		rows = new long[count * height];
+		widths = new int[count * height];
+		heights = new int[count * width];
+		maxHeights = new int[count];
+	}
+
+	public int getCount() { return count; }
+
+	public int getWidth() { return width; }
+
+	public int getHeight() { return height; }
+
+	public int getMaxHeight(int i) {
+		return maxHeights[i];
+	}
+
+	public int getColumnHeight(int i, int x) {
+		if (x < 0 || x >= width) throw new RuntimeException("column " + x + " out of bounds, width " + width);
+		return heights[i * width + x];
+	}
+
+	public int getRowWidth(int i, int y) {
+		if (y < 0 || y >= height) throw new RuntimeException("row " + y + " out of bounds, height " + height);
+		return widths[i * height + y];
+	}
+
+	/**
+	 Returns true if block (x, y) of board i is filled or out of bounds.
+	*/
+	public boolean getGrid(int i, int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) return true;
+		return (rows[i * height + y] & (1L << x)) != 0;
+	}
+
+	/**
+	 Empties board i.
+	*/
+	public void reset(int i) {
+		int rowBase = i * height;
+		Arrays.fill(rows, rowBase, rowBase + maxHeights[i], 0L);
+		Arrays.fill(widths, rowBase, rowBase + maxHeights[i], 0);
+		Arrays.fill(heights, i * width, (i + 1) * width, 0);
+		maxHeights[i] = 0;
+	}
+
+	/**
+	 For every board i with a piece, stores in ys[i] the y where
+	 pieces[i] comes to rest if dropped straight down at xs[i],
+	 like Board.dropHeight(). Boards with a null piece are skipped.
+	 Throws if a piece does not lie across its board at xs[i] --
+	 the columns beyond belong to the next board.
+	*/
+	public void dropHeights(Piece[] pieces, int[] xs, int[] ys) {
+		for (int i = 0; i < count; i++) {
+			Piece piece = pieces[i];
+			if (piece == null) continue;
+			int[] skirt = piece.getSkirt();
+			if (xs[i] < 0 || xs[i] + skirt.length > width)
+				throw new RuntimeException("piece " + skirt.length + " wide at x " + xs[i]
+						+ " is off board " + i + ", width " + width);
+			int colBase = i * width + xs[i];
+			int y = Integer.MIN_VALUE;
+			for (int j = 0; j < skirt.length; j++)
+				y = Math.max(y, heights[colBase + j] - skirt[j]);
+			ys[i] = y;
+		}
+	}
+
+	/**
+	 Places pieces[i] at (xs[i], ys[i]) on every board i with a
+	 piece, storing the Board.place() result code in results[i].
+	 A board whose placement is out of bounds or bad is left
+	 unchanged. Boards with a null piece are skipped.
+	*/
+	public void place(Piece[] pieces, int[] xs, int[] ys, int[] results) {
+		for (int i = 0; i < count; i++) {
+			Piece piece = pieces[i];
+			if (piece == null) continue;
+			results[i] = place(i, piece, xs[i], ys[i]);
+		}
+	}
+
+	private int place(int i, Piece piece, int x, int y) {
+		int rowBase = i * height;
+		int[] points = piece.getPoints();
+		for (int pt : points) {
+			int bx = x + Piece.packedX(pt);
+			int by = y + Piece.packedY(pt);
+			if (bx < 0 || bx >= width || by < 0 || by >= height)
+				return Board.PLACE_OUT_BOUNDS;
+			if ((rows[rowBase + by] & (1L << bx)) != 0)
+				return Board.PLACE_BAD;
+		}
+
+		int colBase = i * width;
+		int res = Board.PLACE_OK;
+		for (int pt : points) {
+			int bx = x + Piece.packedX(pt);
+			int by = y + Piece.packedY(pt);
+			rows[rowBase + by] |= 1L << bx;
+			if (++widths[rowBase + by] == width) res = Board.PLACE_ROW_FILLED;
+			if (heights[colBase + bx] < by + 1) heights[colBase + bx] = by + 1;
+		}
+		maxHeights[i] = Math.max(maxHeights[i], y + piece.getTop());
+		return res;
+	}
+
+	/**
+	 Clears the full rows of every board, storing how many rows
+	 each board lost in cleared[i].
+	*/
+	public void clearRows(int[] cleared) {
+		for (int i = 0; i < count; i++)
+			cleared[i] = clearRows(i);
+	}
+
+	private int clearRows(int i) {
+		int rowBase = i * height;
+		int max = maxHeights[i];
+		int to = rowBase;
+		for (int y = rowBase; y < rowBase + max; y++) {
+			if (widths[y] != width) {
+				rows[to] = rows[y];
+				widths[to] = widths[y];
+				to++;
+			}
+		}
+		int cleared = rowBase + max - to;
+		if (cleared == 0) return 0;
+		Arrays.fill(rows, to, rowBase + max, 0L);
+		Arrays.fill(widths, to, rowBase + max, 0);
+
+		// new heights: the highest row holding each column, top down
+		int colBase = i * width;
+		Arrays.fill(heights, colBase, colBase + width, 0);
+		long found = 0;
+		int newMax = 0;
+		for (int y = to - 1; y >= rowBase && found != fullRow; y--) {
+			long fresh = rows[y] & ~found;
+			if (fresh != 0 && newMax == 0) newMax = y - rowBase + 1;
+			found |= fresh;
+			while (fresh != 0) {
+				heights[colBase + Long.numberOfTrailingZeros(fresh)] = y - rowBase + 1;
+				fresh &= fresh - 1;
+			}
+		}
+		maxHeights[i] = newMax;
+		return cleared;
+	}
+
+	/**
+	 Returns a new committed Board holding the blocks of board i.
+	*/
+	public Board toBoard(int i) {
+		return Board.ofRows(width, height, rows, i * height, maxHeights[i]);
+	}
+}
@@ -0,0 +1,127 @@
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+  Unit test for BoardBatch -- every board in the batch
+  must match a plain Board given the same moves.
+ */
+public class BoardBatchTest extends TestCase {
+	private Piece[] pieces;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		pieces = Piece.getPieces();
+	}
+
+	public void testMatchesBoards() {
+		int n = 16;
+		BoardBatch batch = new BoardBatch(n, 10, 24);
+		Board[] boards = new Board[n];
+		for (int i = 0; i < n; i++) boards[i] = new Board(10, 24);
+
+		Random random = new Random(0);
+		Piece[] batchPieces = new Piece[n];
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		int[] results = new int[n];
+		int[] cleared = new int[n];
+		for (int step = 0; step < 300; step++) {
+			for (int i = 0; i < n; i++) {
+				Piece piece = pieces[random.nextInt(pieces.length)];
+				int x = random.nextInt(10 - piece.getWidth() + 1);
+				// every 5th board skips a turn
+				batchPieces[i] = (step + i) % 5 == 0 ? null : piece;
+				xs[i] = x;
+			}
+			batch.dropHeights(batchPieces, xs, ys);
+			batch.place(batchPieces, xs, ys, results);
+			batch.clearRows(cleared);
+
+			for (int i = 0; i < n; i++) {
+				Board board = boards[i];
+				Piece piece = batchPieces[i];
+				if (piece == null) {
+					assertEquals(0, cleared[i]);
+					continue;
+				}
+				int y = board.dropHeight(piece, xs[i]);
+				assertEquals(y, ys[i]);
+				if (y + piece.getHeight() > 24) {
+					assertEquals(Board.PLACE_OUT_BOUNDS, results[i]);
+					assertEquals(0, cleared[i]);
+					batch.reset(i);
+					boards[i] = new Board(10, 24);
+					continue;
+				}
+				assertEquals(board.place(piece, xs[i], y), results[i]);
+				assertEquals(board.clearRows(), cleared[i]);
+				board.commit();
+				assertEquals(board.getMaxHeight(), batch.getMaxHeight(i));
+				for (int x = 0; x < 10; x++)
+					assertEquals(board.getColumnHeight(x), batch.getColumnHeight(i, x));
+				assertEquals(board.toString(), batch.toBoard(i).toString());
+			}
+		}
+	}
+
+	public void testBadPlacementLeavesBoard() {
+		BoardBatch batch = new BoardBatch(2, 4, 6);
+		Piece stick = pieces[Piece.STICK];
+		Piece square = pieces[Piece.SQUARE];
+		int[] results = new int[2];
+		batch.place(new Piece[] {stick, square}, new int[] {0, 0}, new int[] {0, 0}, results);
+		assertEquals(Board.PLACE_OK, results[0]);
+		assertEquals(Board.PLACE_OK, results[1]);
+
+		batch.place(new Piece[] {square, null}, new int[] {0, 0}, new int[] {3, 0}, results);
+		assertEquals(Board.PLACE_BAD, results[0]);
+		assertEquals(4, batch.getMaxHeight(0));
+		assertEquals(1, batch.getRowWidth(0, 3));
+		assertFalse(batch.getGrid(0, 1, 3));
+	}
+
+	public void testOffOriginPiece() {
+		// a bar raised one row above its origin drops to y = -1
+		Piece raised = new Piece("0 1  1 1  2 1  3 1");
+		BoardBatch batch = new BoardBatch(1, 4, 6);
+		Board board = new Board(4, 6);
+		Piece[] batchPieces = {raised};
+		int[] xs = {0};
+		int[] ys = new int[1];
+		int[] results = new int[1];
+		int[] cleared = new int[1];
+		batch.dropHeights(batchPieces, xs, ys);
+		assertEquals(board.dropHeight(raised, 0), ys[0]);
+		assertEquals(-1, ys[0]);
+
+		batch.place(batchPieces, xs, ys, results);
+		assertEquals(board.place(raised, 0, -1), results[0]);
+		assertEquals(1, batch.getMaxHeight(0));
+		batch.clearRows(cleared);
+		assertEquals(board.clearRows(), cleared[0]);
+		assertEquals(1, cleared[0]);
+		assertEquals(0, batch.getMaxHeight(0));
+		board.commit();
+		assertEquals(board.toString(), batch.toBoard(0).toString());
+	}
+
+	public void testColumnsStayOnTheirBoard() {
+		BoardBatch batch = new BoardBatch(2, 4, 6);
+		int[] results = new int[2];
+		Piece stick = pieces[Piece.STICK];
+		batch.place(new Piece[] {null, stick}, new int[] {0, 0}, new int[] {0, 0}, results);
+
+		// x = 3 puts a square's right column on board 1's column 0
+		Piece square = pieces[Piece.SQUARE];
+		assertThrows(RuntimeException.class,
+				() -> batch.dropHeights(new Piece[] {square, null}, new int[] {3, 0}, new int[2]));
+		assertThrows(RuntimeException.class,
+				() -> batch.dropHeights(new Piece[] {square, null}, new int[] {-1, 0}, new int[2]));
+		assertThrows(RuntimeException.class, () -> batch.getColumnHeight(0, 4));
+		assertThrows(RuntimeException.class, () -> batch.getRowWidth(0, 6));
+		assertEquals(4, batch.getColumnHeight(1, 0));
+	}
+}
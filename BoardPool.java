@@ -0,0 +1,86 @@
+// BoardPool.java
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ A pool of boards of one size whose rows live off the Java heap.
+ acquire() hands out an empty board, release() takes it back for
+ reuse, so long runs of headless games allocate no boards once the
+ pool is warm and leave the garbage collector little to do.
+
+ <p>
+ Row memory is allocated as direct buffers of SLAB boards at a
+ time and never freed while the pool lives. Pooled boards are
+ plain Boards, so brains and the rest of the query surface work on
+ them unchanged. A pool is not thread-safe; use one per thread.
+*/
+public class BoardPool {
+	private static final int SLAB = 64;	// boards per direct buffer
+
+	private final int width;
+	private final int height;
+	private final int boardBytes;
+	private final ArrayDeque<Board> free;
+	private final Set<Board> inUse;	// handed out by acquire(), by identity
+	private int allocated;
+
+	public BoardPool(int width, int height) {
+		this.width = width;
+		this.height = height;
+		boardBytes = OffHeapRowStore.bytesFor(width, height);
+		free = new ArrayDeque<Board>();
+		inUse = Collections.newSetFromMap(new IdentityHashMap<Board, Boolean>());
+		allocated = 0;
+	}
+
+	public int getWidth() { return width; }
+
+	public int getHeight() { return height; }
+
+	/**
+	 Returns the number of boards made so far, in use or free.
+	*/
+	public int getAllocated() {
+		return allocated;
+	}
+
+	/**
+	 Returns an empty, committed board.
+	*/
+	public Board acquire() {
+		if (free.isEmpty()) addSlab();
+		Board board = free.pop();
+		inUse.add(board);
+		return board;
+	}
+
+	/**
+	 Gives a board from acquire() back to the pool. It is reset,
+	 and must not be used by the caller again. Boards this pool
+	 did not hand out, or that are already back, are refused.
+	*/
+	public void release(Board board) {
+		if (board.getWidth() != width || board.getHeight() != height)
+			throw new RuntimeException("board is " + board.getWidth() + "x" + board.getHeight()
+					+ ", pool holds " + width + "x" + height);
+		if (!inUse.remove(board))
+			throw new RuntimeException("board is not out of this pool -- released twice, or never acquired here");
+		board.reset();
+		free.push(board);
+	}
+
+	// Makes SLAB boards on one new direct buffer.
+	private void addSlab() {
+		ByteBuffer slab = ByteBuffer.allocateDirect(boardBytes * SLAB);
+		for (int i = 0; i < SLAB; i++) {
+			slab.limit((i + 1) * boardBytes);
+			slab.position(i * boardBytes);
+			free.push(new Board(width, height, new OffHeapRowStore(width, height, slab.slice())));
+		}
+		allocated += SLAB;
+	}
+}
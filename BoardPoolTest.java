@@ -0,0 +1,74 @@
+import junit.framework.TestCase;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+  Unit test for BoardPool.
+ */
+public class BoardPoolTest extends TestCase {
+
+	public void testReuse() {
+		BoardPool pool = new BoardPool(10, 24);
+		Piece[] pieces = Piece.getPieces();
+		Brain brain = new DefaultBrain();
+
+		Board board = pool.acquire();
+		assertEquals(10, board.getWidth());
+		int made = pool.getAllocated();
+		for (int i = 0; i < 40; i++) {
+			Brain.Move move = brain.bestMove(board, pieces[i % pieces.length], 20, null);
+			board.place(move.piece, move.x, move.y);
+			board.clearRows();
+			board.commit();
+		}
+		assertTrue(board.getMaxHeight() > 0);
+		BoardSnapshot snapshot = board.snapshot();
+		String picture = board.toString();
+
+		pool.release(board);
+		Board again = pool.acquire();
+		assertSame(board, again);
+		assertEquals(made, pool.getAllocated());
+		assertEquals(0, again.getMaxHeight());
+		assertEquals(0, again.getHash());
+		assertEquals(new Board(10, 24).toString(), again.toString());
+		again.setDebugMode(true);
+		again.sanityCheck();
+
+		// snapshots outlive the pooled board
+		assertEquals(picture, snapshot.toString());
+	}
+
+	public void testGrowsBySlabs() {
+		BoardPool pool = new BoardPool(100, 20);
+		Board[] boards = new Board[100];
+		for (int i = 0; i < boards.length; i++) {
+			boards[i] = pool.acquire();
+			boards[i].place(Piece.getPieces()[Piece.SQUARE], i % 99, 0);
+			boards[i].commit();
+		}
+		for (int i = 0; i < boards.length; i++) {
+			assertEquals(2, boards[i].getRowWidth(0));
+			assertTrue(boards[i].getGrid(i % 99 + 1, 1));
+		}
+		int made = pool.getAllocated();
+		assertTrue(made >= 100);
+		for (Board b : boards) pool.release(b);
+		for (int i = 0; i < boards.length; i++) pool.acquire();
+		assertEquals(made, pool.getAllocated());
+		assertThrows(RuntimeException.class, () -> pool.release(new Board(10, 20)));
+	}
+
+	public void testRejectsForeignBoards() {
+		BoardPool pool = new BoardPool(10, 20);
+		Board board = pool.acquire();
+		pool.release(board);
+		// a second release must not put the board in the free list twice
+		assertThrows(RuntimeException.class, () -> pool.release(board));
+		assertNotSame(pool.acquire(), pool.acquire());
+
+		// right size, but not made by this pool
+		assertThrows(RuntimeException.class, () -> pool.release(new Board(10, 20)));
+		assertThrows(RuntimeException.class, () -> pool.release(new BoardPool(10, 20).acquire()));
+	}
+}
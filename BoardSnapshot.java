@@ -0,0 +1,87 @@
+// BoardSnapshot.java
+
+/**
+ An immutable copy of a Board's blocks, made by Board.snapshot().
+ Rows are shared with the board they came from (see RowStore.share()),
+ so making one costs about one reference per filled row. The board
+ keeps changing freely afterwards, and a snapshot may be read by any
+ number of threads at once.
+*/
+public final class BoardSnapshot {
+	final int width;
+	final int height;
+	final RowStore rows;		// rows [0, maxHeight), never written
+	final int maxHeight;
+	final int[] heights;
+	final int[] widths;		// widths of rows [0, maxHeight)
+	final long hash;
+
+	final int[] colCounts;
+	final int filledCells;
+	final int heightSum;
+
+	BoardSnapshot(int width, int height, RowStore rows, int maxHeight, int[] heights, int[] widths,
+			long hash, int[] colCounts, int filledCells, int heightSum) {
+		this.width = width;
+		this.height = height;
+		this.rows = rows;
+		this.maxHeight = maxHeight;
+		this.heights = heights;
+		this.widths = widths;
+		this.hash = hash;
+		this.colCounts = colCounts;
+		this.filledCells = filledCells;
+		this.heightSum = heightSum;
+	}
+
+	public int getWidth() { return width; }
+
+	public int getHeight() { return height; }
+
+	public int getMaxHeight() { return maxHeight; }
+
+	/**
+	 Same as Board.getHash() on the board at the time of the snapshot.
+	*/
+	public long getHash() { return hash; }
+
+	public int getColumnHeight(int x) {
+		return heights[x];
+	}
+
+	public int getRowWidth(int y) {
+		return y < maxHeight ? widths[y] : 0;
+	}
+
+	/**
+	 Returns true if the given block is filled or out of bounds,
+	 like Board.getGrid().
+	*/
+	public boolean getGrid(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) return true;
+		return rows.get(x, y);
+	}
+
+	/**
+	 Returns a new committed Board holding the snapshot's blocks.
+	 The board shares rows with the snapshot and copies them
+	 only as it writes them.
+	*/
+	public Board toBoard() {
+		return new Board(this);
+	}
+
+	public String toString() {
+		StringBuilder buff = new StringBuilder();
+		for (int y = height-1; y>=0; y--) {
+			buff.append('|');
+			for (int x=0; x<width; x++) {
+				if (getGrid(x,y)) buff.append('+');
+				else buff.append(' ');
+			}
+			buff.append("|\n");
+		}
+		for (int x=0; x<width+2; x++) buff.append('-');
+		return(buff.toString());
+	}
+}
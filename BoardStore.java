@@ -0,0 +1,139 @@
+// BoardStore.java
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ A file of Board positions, all of one width and height, that can
+ be appended to and read back in any order. Every position takes a
+ fixed-size record holding Board.encode(), so position i sits at a
+ known offset; the file is memory-mapped in segments, so reads and
+ writes are plain buffer accesses once a segment is mapped.
+
+ <p>
+ File layout: a 24 byte header (magic, width, height, record size
+ as ints, then the number of positions as a long), then the records.
+
+ <p>
+ Appends must come from one thread; get() and size() may be called
+ from any thread.
+*/
+public class BoardStore implements Closeable {
+	private static final int MAGIC = 0x54425331;	// "TBS1"
+	private static final int HEADER = 24;
+	private static final long SEGMENT_BYTES = 16L << 20;	// mapped at a time
+
+	private final int width;
+	private final int height;
+	private final int recordSize;
+	private final int perSegment;		// records in one mapped segment
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final ArrayList<MappedByteBuffer> segments;
+	private volatile long size;
+
+	/**
+	 Opens the store in the given file, creating it if it does not
+	 exist. An existing file must hold boards of the same size.
+	*/
+	public BoardStore(File path, int width, int height) throws IOException {
+		this.width = width;
+		this.height = height;
+		recordSize = Board.encodedSize(width, height);
+		perSegment = (int) Math.max(1, SEGMENT_BYTES / recordSize);
+		segments = new ArrayList<MappedByteBuffer>();
+
+		boolean fresh = !path.exists() || path.length() == 0;
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+		if (fresh) {
+			header.putInt(0, MAGIC);
+			header.putInt(4, width);
+			header.putInt(8, height);
+			header.putInt(12, recordSize);
+			header.putLong(16, 0);
+		} else if (header.getInt(0) != MAGIC || header.getInt(4) != width
+				|| header.getInt(8) != height || header.getInt(12) != recordSize) {
+			close();
+			throw new RuntimeException(path + " is not a store of " + width + "x" + height + " boards");
+		}
+		size = header.getLong(16);
+	}
+
+	public int getWidth() { return width; }
+
+	public int getHeight() { return height; }
+
+	/**
+	 Returns the number of positions in the store.
+	*/
+	public long size() {
+		return size;
+	}
+
+	/**
+	 Appends a position and returns its index.
+	*/
+	public long append(Board board) throws IOException {
+		if (board.getWidth() != width || board.getHeight() != height)
+			throw new RuntimeException("board is " + board.getWidth() + "x" + board.getHeight()
+					+ ", store holds " + width + "x" + height);
+		long index = size;
+		ByteBuffer record = record(index);
+		board.encode(record);
+		size = index + 1;
+		header.putLong(16, size);
+		return index;
+	}
+
+	/**
+	 Returns a new Board holding position i.
+	*/
+	public Board get(long i) throws IOException {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("position " + i + " of " + size);
+		return Board.decode(record(i));
+	}
+
+	/**
+	 Flushes the header and every mapped segment to the file.
+	*/
+	public void flush() {
+		header.force();
+		synchronized (segments) {
+			for (MappedByteBuffer segment : segments)
+				segment.force();
+		}
+	}
+
+	public void close() throws IOException {
+		channel.close();
+		file.close();
+	}
+
+	// A buffer over record i, mapping its segment first if needed.
+	private ByteBuffer record(long i) throws IOException {
+		int seg = (int) (i / perSegment);
+		MappedByteBuffer segment;
+		synchronized (segments) {
+			while (segments.size() <= seg) {
+				long offset = HEADER + (long) segments.size() * perSegment * recordSize;
+				segments.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) perSegment * recordSize));
+			}
+			segment = segments.get(seg);
+		}
+		ByteBuffer record = segment.duplicate();
+		int pos = (int) (i % perSegment) * recordSize;
+		record.position(pos);
+		record.limit(pos + recordSize);
+		return record;
+	}
+}
@@ -0,0 +1,63 @@
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+  Unit test for BoardStore.
+ */
+public class BoardStoreTest extends TestCase {
+	private File file;
+	private Piece[] pieces;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("boards", ".bin");
+		pieces = Piece.getPieces();
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	public void testAppendAndGet() throws IOException {
+		Board board = new Board(10, 24);
+		String[] pictures = new String[50];
+		BoardStore store = new BoardStore(file, 10, 24);
+		for (int i = 0; i < pictures.length; i++) {
+			Piece piece = pieces[i % pieces.length];
+			int x = (i * 3) % (10 - piece.getWidth() + 1);
+			board.place(piece, x, board.dropHeight(piece, x));
+			board.clearRows();
+			board.commit();
+			pictures[i] = board.toString();
+			assertEquals(i, store.append(board));
+		}
+		assertEquals(pictures.length, store.size());
+		assertEquals(pictures[7], store.get(7).toString());
+		assertEquals(pictures[49], store.get(49).toString());
+		assertEquals(pictures[0], store.get(0).toString());
+		assertThrows(IndexOutOfBoundsException.class, () -> store.get(50));
+		store.close();
+
+		// reopen and keep going
+		BoardStore again = new BoardStore(file, 10, 24);
+		assertEquals(pictures.length, again.size());
+		for (int i = 0; i < pictures.length; i++)
+			assertEquals(pictures[i], again.get(i).toString());
+		assertEquals(50, again.append(new Board(10, 24)));
+		assertEquals(0, again.get(50).getMaxHeight());
+		again.close();
+	}
+
+	public void testWrongSize() throws IOException {
+		new BoardStore(file, 10, 24).close();
+		assertThrows(RuntimeException.class, () -> new BoardStore(file, 12, 24));
+		BoardStore store = new BoardStore(file, 10, 24);
+		assertThrows(RuntimeException.class, () -> store.append(new Board(10, 20)));
+		store.close();
+	}
+}
@@ -1,6 +1,7 @@
 import junit.framework.TestCase;
 import org.junit.jupiter.api.BeforeAll;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -23,12 +24,17 @@ public class BoardTest extends TestCase {
 
 	protected void setUp() throws Exception{
 		super.setUp();
-		b = new Board(5, 6);
+		b = new Board(5, 6, newRows(5, 6));
 		b.setDebugMode(false);
 		pieces = Piece.getPieces();
 		getFastRotations();
 	}
 
+	// the row storage the test boards use -- WideBoardTest swaps it
+	protected RowStore newRows(int width, int height) {
+		return RowStore.forWidth(width, height);
+	}
+
 	private void getFastRotations() {
 		stickR1 = pieces[Piece.STICK];
 		L1R1 = pieces[Piece.L1];
@@ -59,7 +65,7 @@ public class BoardTest extends TestCase {
 	}
 
 	public void testCtor() {
-		Board b = new Board(5, 6);
+		Board b = new Board(5, 6, newRows(5, 6));
 
 		assertEquals(5 ,b.getWidth());
 		assertEquals(6 ,b.getHeight());
@@ -72,7 +78,7 @@ public class BoardTest extends TestCase {
 	}
 
 	public void testPlaceNoCommit() {
-		Board b = new Board(5, 6);
+		Board b = new Board(5, 6, newRows(5, 6));
 
 		int res = b.place(stickR1, 0, 0);
 		assertEquals(Board.PLACE_OK, res);
@@ -241,6 +247,29 @@ public class BoardTest extends TestCase {
 		b.commit();
 	}
 
+	public void testDropHeights() {
+		b.place(S1R1, 0, 0);
+		b.commit();
+
+		Piece.Placements moves = L1R1.getPlacements(5);
+		int[] ys = new int[moves.count];
+		b.dropHeights(moves, ys);
+		for (int i = 0; i < moves.count; i++) {
+			assertEquals(b.dropHeight(moves.pieces[i], moves.xs[i]), ys[i]);
+		}
+
+		int[] stickYs = new int[2];
+		b.dropHeights(stickR2, stickYs);
+		assertEquals(2, stickYs[0]);
+		assertEquals(2, stickYs[1]);
+
+		int[] pyrYs = new int[4];
+		b.dropHeights(pyrR2, pyrYs);
+		for (int x = 0; x < 4; x++) {
+			assertEquals(b.dropHeight(pyrR2, x), pyrYs[x]);
+		}
+	}
+
 	public void testGetGrid() {
 		assertTrue(b.getGrid(-1, 0));
 		b.place(stickR2, 0, 0);
@@ -251,40 +280,404 @@ public class BoardTest extends TestCase {
 
 	}
 
+	public void testCanPlace() {
+		b.place(stickR2, 0, 0);
+		b.commit();
+		b.place(sqr, 0, 2);
+		b.commit();
+		long hash = b.getHash();
+
+		assertTrue(b.canPlace(stickR1, 4, 0));
+		assertFalse(b.canPlace(stickR1, 3, 0));
+		assertFalse(b.canPlace(stickR1, 5, 0));
+		assertFalse(b.canPlace(stickR1, 4, 3));
+		assertFalse(b.canPlace(sqr, -1, 4));
+
+		// falls under the overhang, unlike dropHeight()
+		assertEquals(1, b.landingY(stickR2, 0, 1));
+		assertEquals(4, b.dropHeight(stickR2, 0));
+		assertEquals(0, b.landingY(stickR1, 4, 2));
+
+		assertEquals(1, b.rowsFilled(stickR1, 4, 0));
+		assertEquals(0, b.rowsFilled(stickR1, 4, 1));
+
+		// a body off the origin reports the rows it really fills
+		Board off = new Board(5, 6, newRows(5, 6));
+		off.place(stickR1, 4, 0);
+		off.commit();
+		Piece raised = new Piece("0 1  1 1  2 1  3 1");
+		assertEquals(1 << 1, off.rowsFilled(raised, 0, 0));
+		assertEquals(1 << 1, off.rowsFilled(raised, 0, 2));
+		assertEquals(0, off.rowsFilled(raised, 0, 3));
+		assertEquals(Board.PLACE_ROW_FILLED, off.place(raised, 0, 2));
+
+		// none of it touched the board
+		assertTrue(b.committed);
+		assertEquals(hash, b.getHash());
+		assertEquals(Board.PLACE_ROW_FILLED, b.place(stickR1, 4, 0));
+	}
+
+	public void testMaskPlaceFailsCleanly() {
+		b.place(stickR2, 0, 0);
+		b.commit();
+		String picture = b.toString();
+		assertEquals(Board.PLACE_BAD, b.place(L1R2, 2, 0));
+		assertEquals(picture, b.toString());
+		b.undo();
+		assertEquals(Board.PLACE_OUT_BOUNDS, b.place(stickR2, 2, 1));
+		assertEquals(picture, b.toString());
+		b.undo();
+		assertEquals(Board.PLACE_ROW_FILLED, b.place(stickR1, 4, 0));
+	}
+
+	public void testRowStoreForWidth() {
+		assertTrue(RowStore.forWidth(10, 20) instanceof NarrowRowStore);
+		assertTrue(RowStore.forWidth(64, 20) instanceof NarrowRowStore);
+		assertTrue(RowStore.forWidth(65, 20) instanceof WideRowStore);
+		assertTrue(RowStore.forWidth(100, 20) instanceof WideRowStore);
+	}
+
+	public void testWideClear() {
+		Board wide = new CheckedBoard(100, 6);
+		for (int x = 0; x < 100; x += 4) {
+			wide.place(stickR2, x, 0);
+			wide.commit();
+		}
+		assertEquals(100, wide.getRowWidth(0));
+		wide.place(sqr, 98, 1);
+		assertEquals(1, wide.clearRows());
+		assertEquals(2, wide.getMaxHeight());
+		assertEquals(2, wide.getRowWidth(0));
+		assertTrue(wide.getGrid(99, 0));
+		assertFalse(wide.getGrid(0, 0));
+		wide.undo();
+		assertEquals(100, wide.getRowWidth(0));
+		assertTrue(wide.getGrid(0, 0));
+		assertEquals(1, wide.getMaxHeight());
+		assertFalse(wide.getGrid(99, 1));
+	}
+
+	public void testTallBoardGrowsLazily() {
+		RowStore store = newRows(5, 100000);
+		Board tall = new CheckedBoard(5, 100000, store);
+		assertTrue(store.capacity < 100000);
+		assertFalse(tall.getGrid(0, 99999));
+		assertEquals(0, tall.getRowWidth(99999));
+		assertEquals(0, tall.dropHeight(stickR1, 0));
+
+		for (int y = 0; y < 40; y += 4) {
+			assertEquals(Board.PLACE_OK, tall.place(stickR1, 0, y));
+			tall.commit();
+		}
+		assertEquals(40, tall.getMaxHeight());
+		assertTrue(tall.getGrid(0, 39));
+		assertTrue(store.capacity >= 40);
+		assertTrue(store.capacity < 100000);
+
+		assertEquals(Board.PLACE_OK, tall.place(stickR1, 0, 99996));
+		assertEquals(100000, tall.getMaxHeight());
+		tall.undo();
+		assertEquals(40, tall.getMaxHeight());
+		assertFalse(tall.getGrid(0, 99999));
+	}
+
+	public void testOffOriginPieceGrows() {
+		Board tall = new CheckedBoard(5, 40, newRows(5, 40));
+		Piece raised = new Piece("1 1  2 1  1 2");
+		assertEquals(2, raised.getHeight());
+		assertEquals(3, raised.getTop());
+		assertEquals(Board.PLACE_OK, tall.place(raised, 0, 14));
+		assertTrue(tall.getGrid(1, 16));
+		assertEquals(17, tall.getMaxHeight());
+		assertEquals(2, tall.getRowWidth(15));
+		tall.undo();
+		assertEquals(0, tall.getMaxHeight());
+		assertFalse(tall.getGrid(1, 16));
+	}
+
+	public void testTransactionsNested() {
+		b.place(stickR2, 0, 0);
+		b.commit();
+
+		b.pushTransaction();
+		assertEquals(Board.PLACE_ROW_FILLED, b.place(pyrR2, 3, 0));
+		assertEquals(1, b.clearRows());
+		checkColHeights(new int[]{0, 0, 0, 1, 2}, b);
+
+		b.pushTransaction();
+		assertEquals(2, b.getTransactionDepth());
+		assertEquals(Board.PLACE_OK, b.place(sqr, 0, 0));
+		b.commit();
+		assertEquals(Board.PLACE_ROW_FILLED, b.place(stickR1, 2, 0));
+		checkColHeights(new int[]{2, 2, 4, 1, 2}, b);
+
+		// undo only reverts back to the last commit inside the level
+		b.undo();
+		checkColHeights(new int[]{2, 2, 0, 1, 2}, b);
+
+		b.popTransaction();
+		checkColHeights(new int[]{0, 0, 0, 1, 2}, b);
+		checkRowLengths(new int[]{2, 1, 0, 0, 0, 0}, b);
+
+		b.popTransaction();
+		assertEquals(0, b.getTransactionDepth());
+		assertEquals(1, b.getMaxHeight());
+		checkColHeights(new int[]{1, 1, 1, 1, 0}, b);
+		checkRowLengths(new int[]{4, 0, 0, 0, 0, 0}, b);
+		assertTrue(b.committed);
+	}
+
+	public void testHash() {
+		assertEquals(0, b.getHash());
+		b.place(stickR2, 0, 0);
+		b.commit();
+		long stickHash = b.getHash();
+		assertTrue(stickHash != 0);
+
+		b.place(sqr, 0, 1);
+		long both = b.getHash();
+		b.undo();
+		assertEquals(stickHash, b.getHash());
+
+		// same blocks, other order
+		Board other = new Board(5, 6, newRows(5, 6));
+		other.place(sqr, 0, 1);
+		other.commit();
+		other.place(stickR2, 0, 0);
+		other.commit();
+		assertEquals(both, other.getHash());
+
+		// a clear hashes like the blocks it leaves behind
+		b.place(pyrR2, 3, 0);
+		b.clearRows();
+		assertEquals(Board.cellKey(3, 0) ^ Board.cellKey(4, 0) ^ Board.cellKey(4, 1), b.getHash());
+		b.undo();
+		assertEquals(stickHash, b.getHash());
+	}
+
+	public void testSnapshot() {
+		b.place(stickR2, 0, 0);
+		b.commit();
+		b.place(pyrR2, 3, 0);
+		BoardSnapshot snap = b.snapshot();
+		String picture = b.toString();
+		long hash = b.getHash();
+		assertEquals(picture, snap.toString());
+		assertEquals(5, snap.getRowWidth(0));
+		assertEquals(3, snap.getMaxHeight());
+
+		// the board moves on, the snapshot does not
+		assertEquals(1, b.clearRows());
+		b.commit();
+		b.place(sqr, 0, 0);
+		b.commit();
+		assertEquals(picture, snap.toString());
+		assertEquals(hash, snap.getHash());
+		b.undo();
+
+		// a board made from it clears the row the snapshot still has
+		Board copy = snap.toBoard();
+		copy.setDebugMode(true);
+		copy.sanityCheck();
+		assertEquals(hash, copy.getHash());
+		assertEquals(1, copy.clearRows());
+		copy.sanityCheck();
+		copy.undo();
+		copy.sanityCheck();
+		copy.place(sqr, 0, 1);
+		copy.commit();
+		copy.sanityCheck();
+		assertEquals(picture, snap.toString());
+		assertEquals(3, snap.toBoard().getMaxHeight());
+	}
+
+	public void testPublishing() {
+		assertNull(b.getPublished());
+		b.place(stickR2, 0, 0);
+		b.commit();
+		assertNull(b.getPublished());
+
+		b.setPublishing(true);
+		BoardSnapshot first = b.getPublished();
+		assertEquals(4, first.getRowWidth(0));
+
+		// uncommitted changes are not published
+		b.place(sqr, 0, 1);
+		assertSame(first, b.getPublished());
+		b.commit();
+		BoardSnapshot second = b.getPublished();
+		assertEquals(3, second.getMaxHeight());
+		assertEquals(1, first.getMaxHeight());
+
+		// nor are commits inside a transaction
+		b.pushTransaction();
+		b.place(pyrR2, 3, 0);
+		b.commit();
+		assertSame(second, b.getPublished());
+		b.popTransaction();
+		assertSame(second, b.getPublished());
+
+		b.setPublishing(false);
+		assertNull(b.getPublished());
+	}
+
+	// Round trips a board through encode()/decode().
+	private Board roundTrip(Board board) {
+		ByteBuffer buf = ByteBuffer.allocate(board.encodedSize());
+		board.encode(buf);
+		assertEquals(0, buf.remaining());
+		buf.flip();
+		Board copy = Board.decode(buf);
+		assertEquals(board.toString(), copy.toString());
+		assertEquals(board.getHash(), copy.getHash());
+		assertEquals(board.getHoles(), copy.getHoles());
+		assertEquals(board.getBumpiness(), copy.getBumpiness());
+		assertEquals(board.getRowTransitions(), copy.getRowTransitions());
+		copy.setDebugMode(true);
+		copy.sanityCheck();
+		return copy;
+	}
+
+	public void testEncode() {
+		roundTrip(b);
+		b.place(stickR2, 0, 0);
+		b.commit();
+		b.place(L1R2, 0, 1);
+		b.commit();
+		Board copy = roundTrip(b);
+		// 5x3 cells fit one long
+		assertEquals(12 + 4 * 5 + 8, b.encodedSize());
+
+		assertTrue(b.place(pyrR1, 2, b.dropHeight(pyrR1, 2)) <= Board.PLACE_ROW_FILLED);
+		roundTrip(b);
+		assertEquals(Board.PLACE_ROW_FILLED, copy.place(sqr, 3, 1));
+
+		// rows straddle words
+		Board wide = new Board(100, 6, newRows(100, 6));
+		for (int x = 0; x < 100; x += 4) {
+			wide.place(stickR2, x, 0);
+			wide.commit();
+		}
+		wide.place(sqr, 63, 1);
+		wide.commit();
+		wide.place(sqr, 98, 3);
+		copy = roundTrip(wide);
+		assertEquals(1, copy.clearRows());
+		copy.sanityCheck();
+
+		ByteBuffer bad = ByteBuffer.allocate(b.encodedSize());
+		b.encode(bad);
+		bad.putInt(20, 1);	// column 2 height
+		bad.flip();
+		assertThrows(RuntimeException.class, () -> Board.decode(bad));
+	}
+
+	public void testFeatures() {
+		assertEquals(0, b.getHoles());
+		assertEquals(12, b.getRowTransitions());
+
+		b.place(stickR2, 1, 1);		// roof over holes in columns 1-4
+		b.commit();
+		b.place(stickR1, 0, 0);
+		b.commit();
+
+		checkColHeights(new int[]{4, 2, 2, 2, 2}, b);
+		assertEquals(0, b.getColumnHoles(0));
+		assertEquals(1, b.getColumnHoles(3));
+		assertEquals(4, b.getHoles());
+		assertEquals(12, b.getHeightSum());
+		assertEquals(-2, b.getHeightDelta(0));
+		assertEquals(2, b.getBumpiness());
+		assertEquals(0, b.getWellSum());
+
+		b.place(sqr, 2, 2);
+		b.commit();
+		assertEquals(2, b.getWellDepth(1));
+		assertEquals(2, b.getWellDepth(4));	// the wall counts as full height
+		assertEquals(4, b.getWellSum());
+		assertEquals(6, b.getBumpiness());
+		assertEquals(2, b.getRowTransitions(0));
+		assertEquals(0, b.getRowTransitions(1));
+		assertEquals(4, b.getRowTransitions(2));
+		assertEquals(2 + 0 + 4 + 4 + 2 + 2, b.getRowTransitions());
+
+		b.place(stickR1, 4, 2);
+		b.undo();
+		assertEquals(4, b.getHoles());
+		assertEquals(6, b.getBumpiness());
+		assertEquals(4, b.getWellSum());
+		assertEquals(14, b.getRowTransitions());
+
+		b.clearRows();
+		assertEquals(2, b.getHoles());
+		assertEquals(16, b.getRowTransitions());
+		b.undo();
+		assertEquals(14, b.getRowTransitions());
+	}
+
+	public void testPopWithoutPush() {
+		Exception exception  = assertThrows(RuntimeException.class, () -> b.popTransaction());
+		assertTrue(exception.getMessage().contains("pop without push"));
+	}
+
+	public void testDebugModeOffByDefault() {
+		Board badBoard = new BadBoard(5, 6);
+		assertEquals(Board.PLACE_OK, badBoard.place(stickR1, 0, 0));
+	}
+
+	public void testCheckedBoardCatchesErrors() {
+		Board checked = new CheckedBoard(5, 6) {
+			@Override
+			public int clearRows() {
+				widthsArr[0]++;
+				return super.clearRows();
+			}
+		};
+		checked.place(stickR1, 0, 0);
+		Exception exception  = assertThrows(RuntimeException.class, checked::clearRows);
+		assertTrue(exception.getMessage().contains("Widths array is invalid"));
+	}
+
 	// redo all tests with sanity check DEBAG  = true
 	public void testSanityCheckCorrectCode() {
 		b.setDebugMode(true);
 		testCtor();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testPlaceReturnRowFilled();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testPlaceNoCommit();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testPlaceReturnBad();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testPlaceReturnOk();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testPlaceReturnOutOfBounds();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testClearRowsGaps();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testClearRowsBasic();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testClearRowsMultiple();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testDropHeight();
 
-		b = new Board(5, 6);
+		b = new CheckedBoard(5, 6, newRows(5, 6));
 		testGetGrid();
+
+		b = new CheckedBoard(5, 6, newRows(5, 6));
+		testTransactionsNested();
+
+		b = new CheckedBoard(5, 6, newRows(5, 6));
+		testFeatures();
 	}
 
 	public void testSanityCheckBadBoard() {
@@ -0,0 +1,48 @@
+/**
+ A Board that verifies itself after every change.
+ Runs sanityCheck() after each place(), clearRows(), undo()
+ and popTransaction(), so bugs show up where they happen.
+ The check is O(width*height) -- use this for tests and debug
+ runs, and a plain Board for play and brain searches.
+*/
+public class CheckedBoard extends Board {
+
+    public CheckedBoard(int width, int height) {
+        super(width, height);
+        setDebugMode(true);
+    }
+
+    CheckedBoard(int width, int height, RowStore rows) {
+        super(width, height, rows);
+        setDebugMode(true);
+    }
+
+    @Override
+    public int place(Piece piece, int x, int y) {
+        int res = super.place(piece, x, y);
+        // failed placements leave the board invalid until undo()
+        if (res <= PLACE_ROW_FILLED)
+            sanityCheck();
+        return res;
+    }
+
+    @Override
+    public int clearRows() {
+        int res = super.clearRows();
+        sanityCheck();
+        return res;
+    }
+
+    @Override
+    public void undo() {
+        super.undo();
+        sanityCheck();
+    }
+
+    @Override
+    public void popTransaction() {
+        super.popTransaction();
+        sanityCheck();
+    }
+
+}
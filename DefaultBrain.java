@@ -1,5 +1,8 @@
 // DefaultBrain.java
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 /**
  Provided code.
  A simple Brain implementation.
@@ -12,9 +15,39 @@
  play with the lowest score. Undo() is used to back-out
  each play before trying the next. To experiment with writing your own
  brain -- just subclass off DefaultBrain and override rateBoard().
+ 
+ A brain keeps scratch arrays from one bestMove() to the next,
+ so use one brain per thread.
 */
 
 public class DefaultBrain implements Brain {
+    // Parallel mode -- null for the plain serial search
+    private final ForkJoinPool pool;
+
+    // Scratch reused by every bestMove(), so a search does not allocate
+    private int[] ys = new int[0];    // drop height of each placement
+    private final Best best = new Best();
+
+    /**
+     Makes a brain that searches on the caller's thread.
+    */
+    public DefaultBrain() {
+        this(null);
+    }
+
+    /**
+     Makes a brain that splits each search across the given pool,
+     every worker rating plays on its own copy of the board, made
+     from a snapshot. It picks the same move as the serial brain:
+     the lowest score, and on a tie the play the serial loop
+     reaches first. Worth it when rateBoard() is expensive;
+     subclasses must then keep rateBoard() safe to call from
+     several threads at once.
+    */
+    public DefaultBrain(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     /**
      Given a piece and a board, returns a move object that represents
      the best play for that piece, or returns null if no play is possible.
@@ -25,52 +58,117 @@ public class DefaultBrain implements Brain {
         // Allocate a move object if necessary
         if (move==null) move = new Brain.Move();
         
-        double bestScore = 1e20;
-        int bestX = 0;
-        int bestY = 0;
-        Piece bestPiece = null;
-        Piece current = piece;
-        
         board.commit();
         
-        // loop through all the rotations
-        while (true) {
-            final int yBound = limitHeight - current.getHeight()+1;
-            final int xBound = board.getWidth() - current.getWidth()+1;
-            
-            // For current rotation, try all the possible columns
-            for (int x = 0; x<xBound; x++) {
-                int y = board.dropHeight(current, x);
-                if (y<yBound) {    // piece does not stick up too far
-                    int result = board.place(current, x, y);
-                    if (result <= Board.PLACE_ROW_FILLED) {
-                        if (result == Board.PLACE_ROW_FILLED) board.clearRows();
-                        
-                        double score = rateBoard(board);
-                        
-                        if (score<bestScore) {
-                            bestScore = score;
-                            bestX = x;
-                            bestY = y;
-                            bestPiece = current;
-                        }
-                    }
+        // every rotation at every column, with all the drop heights at once
+        Piece.Placements moves = piece.getPlacements(board.getWidth());
+        if (ys.length < moves.count) ys = new int[moves.count];
+        int[] ys = this.ys;
+        board.dropHeights(moves, ys);
+        
+        Best best = this.best;
+        best.reset();
+        if (pool == null) {
+            rate(board, moves, ys, 0, moves.count, limitHeight, best);
+        } else {
+            best = pool.invoke(new Search(this, board.snapshot(), moves, ys, 0, moves.count, limitHeight,
+                    Math.max(1, moves.count / (4 * pool.getParallelism()))));
+        }
+
+        if (best.index < 0) { return(null); }    // could not find a play at all!
+        else {
+            move.x = moves.xs[best.index];
+            move.y = ys[best.index];
+            move.piece = moves.pieces[best.index];
+            move.score = best.score;
+            return(move);
+        }
+    }
+
+    // The lowest scoring play found, as an index into the placements.
+    private static class Best {
+        double score;
+        int index;
+
+        Best() {
+            reset();
+        }
+
+        void reset() {
+            score = 1e20;
+            index = -1;
+        }
+    }
+
+    /*
+     Rates plays [from, to) on the given committed board, placing
+     each one and backing it out with undo(), and records any that
+     beat best. Keeps the first of equal scores, so the serial and
+     parallel searches agree.
+    */
+    private void rate(Board board, Piece.Placements moves, int[] ys, int from, int to, int limitHeight, Best best) {
+        for (int i = from; i < to; i++) {
+            Piece current = moves.pieces[i];
+            int x = moves.xs[i];
+            int y = ys[i];
+            if (y < limitHeight - current.getHeight()+1) {    // piece does not stick up too far
+                int result = board.place(current, x, y);
+                if (result <= Board.PLACE_ROW_FILLED) {
+                    if (result == Board.PLACE_ROW_FILLED) board.clearRows();
+                    
+                    double score = rateBoard(board);
                     
-                    board.undo();    // back out that play, loop around for the next
+                    if (score<best.score) {
+                        best.score = score;
+                        best.index = i;
+                    }
                 }
+                
+                board.undo();    // back out that play, loop around for the next
             }
-            
-            current = current.fastRotation();
-            if (current == piece) break;    // break if back to original rotation
         }
+    }
 
-        if (bestPiece == null) { return(null); }    // could not find a play at all!
-        else {
-            move.x = bestX;
-            move.y = bestY;
-            move.piece = bestPiece;
-            move.score = bestScore;
-            return(move);
+    /*
+     One slice of a parallel search: splits in halves down to
+     `grain` plays, then rates them on a board of its own.
+    */
+    private static class Search extends RecursiveTask<Best> {
+        private static final long serialVersionUID = 1L;
+        private final DefaultBrain brain;
+        private final BoardSnapshot snapshot;
+        private final Piece.Placements moves;
+        private final int[] ys;
+        private final int from, to, limitHeight, grain;
+
+        Search(DefaultBrain brain, BoardSnapshot snapshot, Piece.Placements moves, int[] ys,
+               int from, int to, int limitHeight, int grain) {
+            this.brain = brain;
+            this.snapshot = snapshot;
+            this.moves = moves;
+            this.ys = ys;
+            this.from = from;
+            this.to = to;
+            this.limitHeight = limitHeight;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Best compute() {
+            if (to - from <= grain) {
+                Best best = new Best();
+                brain.rate(snapshot.toBoard(), moves, ys, from, to, limitHeight, best);
+                return best;
+            }
+
+            int mid = (from + to) >>> 1;
+            Search low = new Search(brain, snapshot, moves, ys, from, mid, limitHeight, grain);
+            Search high = new Search(brain, snapshot, moves, ys, mid, to, limitHeight, grain);
+            high.fork();
+            Best a = low.compute();
+            Best b = high.join();
+            // the low half comes first in the serial order, so it wins ties
+            return b.score < a.score ? b : a;
         }
     }
     
@@ -81,28 +179,14 @@ public class DefaultBrain implements Brain {
      that board position -- larger numbers for worse boards.
      This version just counts the height
      and the number of "holes" in the board.
+     Both are kept up to date by the board, so this is O(1).
     */
     public double rateBoard(Board board) {
         final int width = board.getWidth();
         final int maxHeight = board.getMaxHeight();
         
-        int sumHeight = 0;
-        int holes = 0;
-        
-        // Count the holes, and sum up the heights
-        for (int x=0; x<width; x++) {
-            final int colHeight = board.getColumnHeight(x);
-            sumHeight += colHeight;
-            
-            int y = colHeight - 2;    // addr of first possible hole
-            
-            while (y>=0) {
-                if  (!board.getGrid(x,y)) {
-                    holes++;
-                }
-                y--;
-            }
-        }
+        int sumHeight = board.getHeightSum();
+        int holes = board.getHoles();
         
         double avgHeight = ((double)sumHeight)/width;
         
@@ -0,0 +1,71 @@
+import junit.framework.TestCase;
+
+import java.util.concurrent.ForkJoinPool;
+
+/*
+  Unit test for DefaultBrain, serial against parallel.
+ */
+public class DefaultBrainTest extends TestCase {
+	private ForkJoinPool pool;
+
+	protected void setUp() throws Exception {
+		pool = new ForkJoinPool(4);
+	}
+
+	protected void tearDown() throws Exception {
+		pool.shutdown();
+	}
+
+	// Plays the same game with both brains, checking every move matches.
+	private void playBoth(Brain serial, Brain parallel, Piece[] pieces, int width, int height, int moves) {
+		Board a = new Board(width, height);
+		Board b = new Board(width, height);
+		for (int i = 0; i < moves; i++) {
+			Piece piece = pieces[(i * 5 + i / 3) % pieces.length];
+			Brain.Move ma = serial.bestMove(a, piece, height - 4, null);
+			Brain.Move mb = parallel.bestMove(b, piece, height - 4, null);
+			if (ma == null) {
+				assertNull(mb);
+				return;
+			}
+			assertNotNull(mb);
+			assertSame(ma.piece, mb.piece);
+			assertEquals(ma.x, mb.x);
+			assertEquals(ma.y, mb.y);
+			assertEquals(ma.score, mb.score);
+			for (Board board : new Board[] {a, b}) {
+				board.place(ma.piece, ma.x, ma.y);
+				board.clearRows();
+				board.commit();
+			}
+			assertEquals(a.toString(), b.toString());
+		}
+	}
+
+	public void testSameMoves() {
+		playBoth(new DefaultBrain(), new DefaultBrain(pool), Piece.getPieces(), 10, 24, 200);
+		playBoth(new DefaultBrain(), new DefaultBrain(pool), PieceSet.pentominoes().getPieces(), 30, 40, 200);
+	}
+
+	public void testTiesGoToFirstPlay() {
+		// every play scores the same, so both must take the first one
+		Brain serial = new DefaultBrain() {
+			public double rateBoard(Board board) { return 1; }
+		};
+		Brain parallel = new DefaultBrain(pool) {
+			public double rateBoard(Board board) { return 1; }
+		};
+		playBoth(serial, parallel, Piece.getPieces(), 12, 30, 20);
+	}
+
+	public void testLeavesBoardAlone() {
+		Board board = new Board(10, 20);
+		board.place(Piece.getPieces()[Piece.SQUARE], 0, 0);
+		board.commit();
+		String before = board.toString();
+		new DefaultBrain(pool).bestMove(board, Piece.getPieces()[Piece.STICK], 16, null);
+		assertEquals(before, board.toString());
+		board.setDebugMode(true);
+		board.sanityCheck();
+	}
+}
@@ -369,9 +369,22 @@ public class JTetris extends JComponent {
 				
 				// tricky: make the piece appear to rotate about its center
 				// can't just leave it at the same lower-left origin as the
-				// previous piece.
-				newX = newX + (currentPiece.getWidth() - newPiece.getWidth())/2;
-				newY = newY + (currentPiece.getHeight() - newPiece.getHeight())/2;
+				// previous piece. The shift is precomputed on the piece.
+				newX = newX + currentPiece.getRotateDx();
+				newY = newY + currentPiece.getRotateDy();
+
+				// if it does not fit there, take the first kick that does
+				// (the current piece is off the board at this point)
+				int[] kicks = currentPiece.getKicks();
+				for (int i = 0; i < kicks.length; i++) {
+					int kickX = newX + Piece.packedX(kicks[i]);
+					int kickY = newY + Piece.packedY(kicks[i]);
+					if (board.canPlace(newPiece, kickX, kickY)) {
+						newX = kickX;
+						newY = kickY;
+						break;
+					}
+				}
 				break;
 				
 			case DOWN: newY--; break;
@@ -422,8 +435,9 @@ public class JTetris extends JComponent {
 		// Sets the newXXX ivars
 		computeNewPosition(verb);
 		
-		// try out the new position (rolls back if it doesn't work)
-		int result = setCurrent(newPiece, newX, newY);
+		// try out the new position -- only touch the board if it fits
+		int result = board.canPlace(newPiece, newX, newY) ?
+				setCurrent(newPiece, newX, newY) : Board.PLACE_BAD;
 		
 		// if row clearing is going to happen, draw the
 		// whole board so the green row shows up
@@ -3,16 +3,30 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class JTetrisBrain extends JTetris{
 
+    private static final Logger LOG = Logger.getLogger(JTetrisBrain.class.getName());
+
     private static final int BRAIN = 5;
     private JCheckBox brainMode;
-    private Brain brain;
     private Brain.Move bestMove;
     private JSlider adversary;
     private JLabel adversaryLabel;
 
+    // bestMove() runs here, on the board the last commit published,
+    // so the Swing thread never waits for the brain -- the adversary
+    // search too, so the live board is only touched by the game
+    private Brain thinkerBrain;
+    private ExecutorService thinker;
+
     /**
      * Creates a new JTetris where each tetris square
      * is drawn with the given number of pixels.
@@ -22,7 +36,14 @@ public class JTetrisBrain extends JTetris{
     JTetrisBrain(int pixels) {
         super(pixels);
         bestMove = new Brain.Move();
-        brain = new DefaultBrain();
+        thinkerBrain = new DefaultBrain();
+        thinker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "brain");
+                t.setDaemon(true);
+                return t;
+            }
+        });
         timer = new javax.swing.Timer(DELAY, new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 tick(DOWN);
@@ -70,9 +91,34 @@ public class JTetrisBrain extends JTetris{
 
     @Override
     public void addNewPiece() {
+        board.setPublishing(true);
         super.addNewPiece();
-        board.undo();
-        bestMove = brain.bestMove(board, currentPiece, getHeight() - TOP_SPACE , null);
+        bestMove = null;
+        if (!gameOn || currentPiece == null) { return; }
+
+        // think on the committed board, without the new piece in it
+        final BoardSnapshot snapshot = board.getPublished();
+        final Piece piece = currentPiece;
+        final int limitHeight = getHeight() - TOP_SPACE;
+        final Board live = board;
+        final int turn = count;
+        thinker.execute(new Runnable() {
+            public void run() {
+                final Brain.Move move;
+                try {
+                    move = thinkerBrain.bestMove(snapshot.toBoard(), piece, limitHeight, null);
+                } catch (RuntimeException e) {
+                    LOG.log(Level.SEVERE, "brain failed on piece " + turn, e);
+                    return;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        // drop answers for a piece that is already gone
+                        if (board == live && count == turn) { bestMove = move; }
+                    }
+                });
+            }
+        });
     }
 
     private void brainMove() {
@@ -94,26 +140,50 @@ public class JTetrisBrain extends JTetris{
     public Piece pickNextPiece() {
         int rand = random.nextInt(100);
         if (adversary.getValue() > rand) {
-            adversaryLabel.setText("*ok*");
-            return getWordsPiece();
-        } else {
-            adversaryLabel.setText("ok");
-            return super.pickNextPiece();
+            Piece worst = getWordsPiece();
+            if (worst != null) {
+                adversaryLabel.setText("*ok*");
+                return worst;
+            }
         }
+        adversaryLabel.setText("ok");
+        return super.pickNextPiece();
     }
 
+    /*
+     The piece whose best play scores worst, or null if there is
+     none. Searched on the thinker over a copy of the published
+     board, so the search neither writes the live board nor makes
+     its commits publish. The Swing thread waits for the answer,
+     since the game needs the piece now.
+    */
     private Piece getWordsPiece() {
-        double score = Double.MIN_VALUE;
-        Piece res = null;
-        Brain.Move curr;
-        for (int i = 0; i < pieces.length; i++) {
-            curr = brain.bestMove(board, pieces[i], getHeight() - TOP_SPACE, null);
-            if (curr.score > score) {
-                res = pieces[i];
-                score = curr.score;
-            }
+        final BoardSnapshot snapshot = board.getPublished();
+        if (snapshot == null) { return null; }
+        final int limitHeight = getHeight() - TOP_SPACE;
+        try {
+            return thinker.submit(new Callable<Piece>() {
+                public Piece call() {
+                    Board copy = snapshot.toBoard();
+                    double score = Double.MIN_VALUE;
+                    Piece res = null;
+                    for (int i = 0; i < pieces.length; i++) {
+                        Brain.Move curr = thinkerBrain.bestMove(copy, pieces[i], limitHeight, null);
+                        if (curr != null && curr.score > score) {
+                            res = pieces[i];
+                            score = curr.score;
+                        }
+                    }
+                    return res;
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            LOG.log(Level.SEVERE, "adversary search failed", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
-        return res;
     }
 
     /**
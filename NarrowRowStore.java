@@ -0,0 +1,107 @@
+// NarrowRowStore.java
+
+import java.util.Arrays;
+
+/**
+ RowStore for boards up to 64 columns wide: each row is a single
+ long in one array, so every row operation is one word operation
+ and removing a row is one array copy.
+*/
+class NarrowRowStore extends RowStore {
+	private long[] bits;		// bits[y] is row y
+	private long[] saved;		// words captured by saveRows()
+	private int savedSize;
+
+	NarrowRowStore(int width, int height) {
+		super(width, height);
+		if (width > 64) throw new RuntimeException("width " + width + " is too wide for a single word");
+		bits = new long[capacity];
+		saved = new long[16];
+		savedSize = 0;
+	}
+
+	/**
+	 Rows are a single word each, so sharing is a plain prefix copy.
+	*/
+	@Override
+	RowStore share(int n) {
+		NarrowRowStore copy = new NarrowRowStore(width, height);
+		copy.bits = Arrays.copyOf(bits, n);
+		copy.capacity = n;
+		return copy;
+	}
+
+	@Override
+	void grow(int newCapacity) {
+		bits = Arrays.copyOf(bits, newCapacity);
+	}
+
+	@Override
+	long word(int y, int w) {
+		return y < bits.length ? bits[y] : 0;
+	}
+
+	@Override
+	boolean get(int x, int y) {
+		return y < bits.length && (bits[y] & (1L << x)) != 0;
+	}
+
+	@Override
+	void set(int x, int y) {
+		bits[y] |= 1L << x;
+	}
+
+	@Override
+	void unset(int x, int y) {
+		bits[y] &= ~(1L << x);
+	}
+
+	@Override
+	void orWord(int y, int w, long bits) {
+		this.bits[y] |= bits;
+	}
+
+	@Override
+	boolean isFull(int y) {
+		return bits[y] == lastWordMask;
+	}
+
+	@Override
+	void removeRows(int first, int top, int end, int[] widths) {
+		int toRow = first;
+		for (int i = first; i < end; i++) {
+			if (i > top || widths[i] != width) {
+				bits[toRow] = bits[i];
+				widths[toRow] = widths[i];
+				toRow++;
+			}
+		}
+		Arrays.fill(bits, toRow, end, 0L);
+		Arrays.fill(widths, toRow, end, 0);
+	}
+
+	@Override
+	void saveRows(int from, int to) {
+		int count = to - from;
+		if (savedSize + count + 1 > saved.length)
+			saved = Arrays.copyOf(saved, Math.max(saved.length * 2, savedSize + count + 1));
+		System.arraycopy(bits, from, saved, savedSize, count);
+		savedSize += count;
+	}
+
+	@Override
+	void restoreRows(int from, int to, int[] widths) {
+		savedSize -= to - from;
+		System.arraycopy(saved, savedSize, bits, from, to - from);
+	}
+
+	@Override
+	void clearSaved() {
+		savedSize = 0;
+	}
+
+	@Override
+	void wipe(int n) {
+		Arrays.fill(bits, 0, Math.min(n, bits.length), 0L);
+	}
+}
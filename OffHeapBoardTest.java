@@ -0,0 +1,26 @@
+import java.nio.ByteBuffer;
+
+/*
+ Reruns every BoardTest on the OffHeapRowStore
+ that BoardPool boards use.
+ */
+public class OffHeapBoardTest extends BoardTest {
+
+	@Override
+	protected RowStore newRows(int width, int height) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(OffHeapRowStore.bytesFor(width, height));
+		return new OffHeapRowStore(width, height, buffer);
+	}
+
+	// off-heap rows are all there from the start
+	@Override
+	public void testTallBoardGrowsLazily() {
+		RowStore store = newRows(5, 1000);
+		Board tall = new CheckedBoard(5, 1000, store);
+		assertEquals(1000, store.capacity);
+		assertEquals(Board.PLACE_OK, tall.place(Piece.getPieces()[Piece.STICK], 0, 996));
+		assertEquals(1000, tall.getMaxHeight());
+		tall.undo();
+		assertEquals(0, tall.getMaxHeight());
+	}
+}
@@ -0,0 +1,150 @@
+// OffHeapRowStore.java
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ RowStore keeping the rows outside the Java heap, in a slice of a
+ direct buffer handed out by BoardPool. Row y is the words at
+ [y*words, (y+1)*words). Every row is there from the start, so the
+ store never grows, and the garbage collector never sees the cells.
+ Rows saved for undo stay on the heap -- they are few and short lived.
+*/
+class OffHeapRowStore extends RowStore {
+	private final LongBuffer bits;
+	private long[] saved;		// words captured by saveRows()
+	private int savedSize;
+
+	/**
+	 Makes a store on the given buffer, which must hold
+	 bytesFor(width, height) bytes.
+	*/
+	OffHeapRowStore(int width, int height, ByteBuffer buffer) {
+		super(width, height);
+		capacity = height;
+		bits = buffer.order(ByteOrder.nativeOrder()).asLongBuffer();
+		if (bits.capacity() < height * words)
+			throw new RuntimeException("buffer too small for a " + width + "x" + height + " board");
+		saved = new long[16];
+		savedSize = 0;
+	}
+
+	/**
+	 Bytes of buffer one store needs.
+	*/
+	static int bytesFor(int width, int height) {
+		return height * ((width + 63) >>> 6) * 8;
+	}
+
+	@Override
+	void grow(int newCapacity) {
+		throw new RuntimeException("off-heap rows do not grow");
+	}
+
+	/**
+	 Snapshots go to the heap, so a pooled board can be released
+	 while its snapshots live on.
+	*/
+	@Override
+	RowStore share(int n) {
+		RowStore copy = RowStore.forWidth(width, height);
+		copy.ensureRows(n);
+		for (int y = 0; y < n; y++) {
+			for (int w = 0; w < words; w++) {
+				long word = bits.get(y * words + w);
+				while (word != 0) {
+					copy.set((w << 6) + Long.numberOfTrailingZeros(word), y);
+					word &= word - 1;
+				}
+			}
+		}
+		return copy;
+	}
+
+	@Override
+	long word(int y, int w) {
+		return y < height ? bits.get(y * words + w) : 0;
+	}
+
+	@Override
+	boolean get(int x, int y) {
+		return y < height && (bits.get(y * words + (x >>> 6)) & (1L << x)) != 0;
+	}
+
+	@Override
+	void set(int x, int y) {
+		int i = y * words + (x >>> 6);
+		bits.put(i, bits.get(i) | (1L << x));
+	}
+
+	@Override
+	void unset(int x, int y) {
+		int i = y * words + (x >>> 6);
+		bits.put(i, bits.get(i) & ~(1L << x));
+	}
+
+	@Override
+	void orWord(int y, int w, long bits) {
+		int i = y * words + w;
+		this.bits.put(i, this.bits.get(i) | bits);
+	}
+
+	@Override
+	boolean isFull(int y) {
+		int base = y * words;
+		for (int w = 0; w < words - 1; w++) {
+			if (bits.get(base + w) != -1L)
+				return false;
+		}
+		return bits.get(base + words - 1) == lastWordMask;
+	}
+
+	@Override
+	void removeRows(int first, int top, int end, int[] widths) {
+		int toRow = first;
+		for (int i = first; i < end; i++) {
+			if (i > top || widths[i] != width) {
+				if (toRow != i) {
+					for (int w = 0; w < words; w++)
+						bits.put(toRow * words + w, bits.get(i * words + w));
+				}
+				widths[toRow] = widths[i];
+				toRow++;
+			}
+		}
+		for (int i = toRow * words; i < end * words; i++)
+			bits.put(i, 0L);
+		Arrays.fill(widths, toRow, end, 0);
+	}
+
+	@Override
+	void saveRows(int from, int to) {
+		int count = (to - from) * words;
+		if (savedSize + count > saved.length)
+			saved = Arrays.copyOf(saved, Math.max(saved.length * 2, savedSize + count));
+		for (int i = 0; i < count; i++)
+			saved[savedSize + i] = bits.get(from * words + i);
+		savedSize += count;
+	}
+
+	@Override
+	void restoreRows(int from, int to, int[] widths) {
+		int count = (to - from) * words;
+		savedSize -= count;
+		for (int i = 0; i < count; i++)
+			bits.put(from * words + i, saved[savedSize + i]);
+	}
+
+	@Override
+	void clearSaved() {
+		savedSize = 0;
+	}
+
+	@Override
+	void wipe(int n) {
+		for (int i = 0; i < Math.min(n, height) * words; i++)
+			bits.put(i, 0L);
+	}
+}
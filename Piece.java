@@ -21,58 +21,103 @@ import java.util.*;
 public class Piece {
 	// Starter code specs out a few basic things, leaving
 	// the algorithms to be done.
-	private TPoint[] body;
+	private int[] points;		// the body, packed -- see pack()
+	private volatile TPoint[] body;	// made from points by the first getBody()
 	private int[] skirt;
 	private int width;
 	private int height;
+	private int top;		// highest y in the body, plus one
 	private Piece next; // "next" rotation
-
-	static private Piece[] pieces;	// singleton static array of first rotations
+	private volatile Placements[] placements;	// one per board width seen, see getPlacements()
+	private PieceSet set;		// the set this rotation belongs to, or null
+	private int id;			// type * 4 + rotation, or -1, see getId()
+	private int[] cells;		// points, sorted -- for equals()
+	private int hash;		// hash of cells
+	private long[] rowMasks;	// rowMasks[y] has bit x set for each body point (x, y)
+	private int rotateDx;		// origin shift to fastRotation(), see getRotateDx()
+	private int rotateDy;
+	private int[] kicks;		// packed offsets to try when rotating
 
 	/**
 	 Defines a new piece given a TPoint[] array of its body.
-	 Makes its own copy of the array and the TPoints inside it.
+	 Makes its own copy of the points.
 	*/
 	public Piece(TPoint[] points) {
-		body = new TPoint[points.length];
+		this(pack(points));
+	}
+
+	/**
+	 Returns a new piece whose body is the given packed points
+	 (see pack()). Makes its own copy of the array; no TPoints or
+	 boxed values are made, so generating pieces at runtime leaves
+	 little garbage.
+	*/
+	public static Piece fromPoints(int[] points) {
+		return new Piece(points.clone());
+	}
+
+	// Builds the piece on packed points, which it keeps.
+	private Piece(int[] points) {
+		this.points = points;
 		int minX = Integer.MAX_VALUE;
 		int maxX = Integer.MIN_VALUE;
 		int minY = Integer.MAX_VALUE;
 		int maxY = Integer.MIN_VALUE;
-		HashMap<Integer, Integer> skirtMap = new HashMap<>();
-		TPoint curr;
-		for (int i=0; i<points.length; i++) {
-			curr = points[i];
-			body[i] = new TPoint(curr);
-			minX = Math.min(curr.x, minX);
-			maxX = Math.max(curr.x, maxX);
-			minY = Math.min(curr.y, minY);
-			maxY = Math.max(curr.y, maxY);
-			fillSkirtMap(skirtMap, curr.x, curr.y);
+		for (int p : points) {
+			minX = Math.min(packedX(p), minX);
+			maxX = Math.max(packedX(p), maxX);
+			minY = Math.min(packedY(p), minY);
+			maxY = Math.max(packedY(p), maxY);
 		}
 		width = maxX - minX + 1;
 		height = maxY - minY + 1;
-		fillSkirtArray(skirtMap, minX, width);
-	}
-	
-	private void fillSkirtArray(Map<Integer, Integer> skirtMap, int minX, int width) {
+		top = maxY + 1;
+
+		// lowest y in each column
 		skirt = new int[width];
-		int index = 0;
-		for (int i = minX; i < minX + width; i++) {
-			skirt[index] = skirtMap.get(i);
-			index++;
+		Arrays.fill(skirt, Integer.MAX_VALUE);
+		for (int p : points) {
+			int i = packedX(p) - minX;
+			skirt[i] = Math.min(skirt[i], packedY(p));
 		}
-	}
 
-	private void fillSkirtMap(Map<Integer, Integer> skirtMap, int x, int y) {
-		if (skirtMap.containsKey(x)) {
-			if (skirtMap.get(x) > y)
-				skirtMap.replace(x, y);
-		} else {
-			skirtMap.put(x, y);
+		id = -1;
+		kicks = NO_KICKS;
+		cells = points.clone();
+		Arrays.sort(cells);
+		hash = Arrays.hashCode(cells);
+
+		if (minX == 0 && minY == 0 && maxX < 64) {
+			rowMasks = new long[height];
+			for (int p : points)
+				rowMasks[packedY(p)] |= 1L << packedX(p);
 		}
 	}
 
+	/**
+	 Packs a point into one int: x in the high 16 bits, y in the low.
+	 Both must fit in a short.
+	*/
+	public static int pack(int x, int y) {
+		return (x << 16) | (y & 0xFFFF);
+	}
+
+	/** x of a packed point. */
+	public static int packedX(int point) {
+		return point >> 16;
+	}
+
+	/** y of a packed point. */
+	public static int packedY(int point) {
+		return (short) point;
+	}
+
+	private static int[] pack(TPoint[] points) {
+		int[] packed = new int[points.length];
+		for (int i = 0; i < points.length; i++)
+			packed[i] = pack(points[i].x, points[i].y);
+		return packed;
+	}
 
 	/**
 	 * Alternate constructor, takes a String with the x,y body points
@@ -97,12 +142,142 @@ public class Piece {
 		return height;
 	}
 
+	/**
+	 Returns one more than the highest y in the body -- the number
+	 of rows above its origin the piece reaches into. The same as
+	 getHeight() for bodies that start at y = 0.
+	*/
+	public int getTop() {
+		return top;
+	}
+
+	/**
+	 Returns the body as one bitmask per row: bit x of
+	 element y is set when (x, y) is in the body, so row y of the
+	 piece placed at column x is getRowMasks()[y] << x.
+	 Returns null unless the body starts at (0, 0) and is at
+	 most 64 wide. The caller should not modify this array.
+	*/
+	public long[] getRowMasks() {
+		return rowMasks;
+	}
+
+	/**
+	 Returns the id of a rotation from a PieceSet, such as the ones
+	 getPieces() returns -- type * 4 + rotation, where type is the
+	 index of the first rotation in the set (STICK, L1, ...) and
+	 rotation counts fastRotation() steps from it. Ids are small and
+	 dense, so they can index tables. Returns -1 for pieces made
+	 any other way.
+	*/
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 Returns the set this rotation belongs to, or null.
+	*/
+	public PieceSet getSet() {
+		return set;
+	}
+
+	// Called once by the PieceSet that owns this rotation, which is
+	// rotation number `rotation` of a ring of `rotations`.
+	void number(PieceSet set, int id, int rotation, int rotations) {
+		this.set = set;
+		this.id = id;
+		rotateDx = (width - next.width) / 2;
+		rotateDy = (height - next.height) / 2;
+		if (rotations == 1) {
+			kicks = NO_KICKS;
+		} else {
+			// straight pieces kick like the I, all others like J L S T Z
+			boolean straight = rotations == 2 && (width == 1 || height == 1);
+			int state = rotations == 2 ? (rotation == 0 ? 0 : 3) : rotation;
+			kicks = (straight ? I_KICKS : KICKS)[state];
+		}
+	}
+
+	/**
+	 Returns how far the origin moves in x when the piece turns into
+	 fastRotation(), so the piece appears to turn about its center.
+	 Precomputed for rotations from a PieceSet; 0 for other pieces.
+	*/
+	public int getRotateDx() {
+		return rotateDx;
+	}
+
+	/**
+	 Returns how far the origin moves in y when the piece turns into
+	 fastRotation() -- see getRotateDx().
+	*/
+	public int getRotateDy() {
+		return rotateDy;
+	}
+
+	/**
+	 Returns the offsets to try, in order, when turning into
+	 fastRotation() where the plain rotation does not fit -- packed
+	 points (see pack()) added to the rotated origin, the first
+	 always (0, 0). The caller should not modify this array.
+	*/
+	public int[] getKicks() {
+		return kicks;
+	}
+
+	private static final int[] NO_KICKS = {0};
+
+	/*
+	 Wall kicks in the style of the standard rotation system, for
+	 counter-clockwise turns (fastRotation() turns that way), from
+	 rotation 0, 1, 2 and 3 -- spawn, left, 180, right. y is up, as
+	 on the Board. Pieces with two rotations use the 0 -> L and
+	 R -> 0 entries, as they flip between those two states.
+	*/
+	private static final int[][] KICKS = {
+		{pack(0, 0), pack(1, 0), pack(1, 1), pack(0, -2), pack(1, -2)},
+		{pack(0, 0), pack(-1, 0), pack(-1, -1), pack(0, 2), pack(-1, 2)},
+		{pack(0, 0), pack(-1, 0), pack(-1, 1), pack(0, -2), pack(-1, -2)},
+		{pack(0, 0), pack(1, 0), pack(1, -1), pack(0, 2), pack(1, 2)},
+	};
+
+	private static final int[][] I_KICKS = {
+		{pack(0, 0), pack(-1, 0), pack(2, 0), pack(-1, 2), pack(2, -1)},
+		{pack(0, 0), pack(-2, 0), pack(1, 0), pack(-2, -1), pack(1, 2)},
+		{pack(0, 0), pack(1, 0), pack(-2, 0), pack(1, -2), pack(-2, 1)},
+		{pack(0, 0), pack(2, 0), pack(-1, 0), pack(2, 1), pack(-1, -2)},
+	};
+
+	/**
+	 Returns the standard rotation with the given id,
+	 or null if there is none.
+	*/
+	public static Piece byId(int id) {
+		return PieceSet.STANDARD.byId(id);
+	}
+
 	/**
 	 Returns a pointer to the piece's body. The caller
 	 should not modify this array.
+	 The TPoints are made on the first call.
 	*/
 	public TPoint[] getBody() {
-		return body;
+		TPoint[] b = body;
+		if (b == null) {
+			b = new TPoint[points.length];
+			for (int i = 0; i < points.length; i++)
+				b[i] = new TPoint(packedX(points[i]), packedY(points[i]));
+			body = b;
+		}
+		return b;
+	}
+
+	/**
+	 Returns the body as packed points (see pack()), in the same
+	 order as getBody(). The caller should not modify this array.
+	*/
+	public int[] getPoints() {
+		return points;
 	}
 
 	/**
@@ -121,14 +296,10 @@ public class Piece {
 	 rotated from the receiver.
 	 */
 	public Piece computeNextRotation() {
-		TPoint[] newPieceArr = new TPoint[body.length];
-		int y, x;
-		for (int i = 0; i < body.length; i++) {
-			x = height - body[i].y - 1;
-			y = body[i].x;
-			newPieceArr[i] = new TPoint(x, y);
-		}
-		return new Piece(newPieceArr);
+		int[] rotated = new int[points.length];
+		for (int i = 0; i < points.length; i++)
+			rotated[i] = pack(height - packedY(points[i]) - 1, packedX(points[i]));
+		return new Piece(rotated);
 	}
 
 	/**
@@ -143,6 +314,90 @@ public class Piece {
 	
 
 
+	/**
+	 A flattened table of every way to drop a piece on a board
+	 of a given width: each rotation, reached by fastRotation(),
+	 at each x where it fits, in that order. Candidate i is
+	 rotation pieces[i] at column xs[i]; its skirt is
+	 skirts[skirtStart[i] .. skirtStart[i] + pieces[i].getWidth()).
+	 Immutable -- see Piece.getPlacements().
+	*/
+	public static class Placements {
+		public final int boardWidth;
+		public final int count;
+		public final Piece[] pieces;
+		public final int[] xs;
+		public final int[] skirtStart;
+		public final int[] skirts;
+
+		private Placements(Piece root, int boardWidth) {
+			this.boardWidth = boardWidth;
+			int total = 0;
+			int skirtTotal = 0;
+			Piece curr = root;
+			do {
+				total += Math.max(0, boardWidth - curr.getWidth() + 1);
+				skirtTotal += curr.getWidth();
+				curr = curr.fastRotation();
+			} while (curr != null && curr != root);
+
+			count = total;
+			pieces = new Piece[total];
+			xs = new int[total];
+			skirtStart = new int[total];
+			skirts = new int[skirtTotal];
+			int i = 0;
+			int start = 0;
+			curr = root;
+			do {
+				System.arraycopy(curr.getSkirt(), 0, skirts, start, curr.getWidth());
+				for (int x = 0; x + curr.getWidth() <= boardWidth; x++) {
+					pieces[i] = curr;
+					xs[i] = x;
+					skirtStart[i] = start;
+					i++;
+				}
+				start += curr.getWidth();
+				curr = curr.fastRotation();
+			} while (curr != null && curr != root);
+		}
+	}
+
+	/**
+	 Returns the placement table for dropping this piece, starting
+	 with this rotation, on a board of the given width.
+	 Computed once per width and cached, so move generation does not
+	 allocate. Safe to call from any thread, like the rest of Piece.
+	*/
+	public Placements getPlacements(int boardWidth) {
+		Placements p = findPlacements(placements, boardWidth);
+		if (p != null) return p;
+		synchronized (this) {
+			// the cached tables are copied, never written, so readers
+			// need no lock -- only makers take turns
+			Placements[] cached = placements;
+			p = findPlacements(cached, boardWidth);
+			if (p == null) {
+				p = new Placements(this, boardWidth);
+				Placements[] grown = cached == null ? new Placements[1] : Arrays.copyOf(cached, cached.length + 1);
+				grown[grown.length - 1] = p;
+				placements = grown;
+			}
+			return p;
+		}
+	}
+
+	// The table for the given width in cached, or null.
+	private static Placements findPlacements(Placements[] cached, int boardWidth) {
+		if (cached != null) {
+			for (Placements p : cached) {
+				if (p.boardWidth == boardWidth) return p;
+			}
+		}
+		return null;
+	}
+
+
 	/**
 	 Returns true if two pieces are the same --
 	 their bodies contain the same points.
@@ -150,6 +405,8 @@ public class Piece {
 	 same body arrays, since the points may not be
 	 in the same order in the bodies. Used internally to detect
 	 if two rotations are effectively the same.
+	 Rotations of the same PieceSet compare by id; other pieces
+	 compare their sorted cells. Neither allocates.
 	*/
 	public boolean equals(Object obj) {
 		// standard equals() technique 1
@@ -160,20 +417,16 @@ public class Piece {
 		if (!(obj instanceof Piece)) return false;
 		Piece other = (Piece)obj;
 
-		if (other.getBody().length != body.length) return false;
-
-		Set<TPoint> points = new HashSet<>();
-		for (int i=0; i<body.length; i++) {
-			points.add(body[i]);
-		}
+		if (set != null && set == other.set) return id == other.id;
+		return hash == other.hash && Arrays.equals(cells, other.cells);
+	}
 
-		TPoint[] otherBody = other.getBody();
-		for (int i=0; i < otherBody.length; i++) {
-			if (!points.contains(otherBody[i])) {
-				return false;
-			}
-		}
-		return true;
+	/**
+	 Hashes the body points, consistent with equals().
+	*/
+	@Override
+	public int hashCode() {
+		return hash;
 	}
 
 
@@ -203,24 +456,11 @@ public class Piece {
 	 from each piece with the {@link #fastRotation()} message.
 	 In this way, the client can iterate through all the rotations
 	 until eventually getting back to the first rotation.
-	 (provided code)
+	 The rotations are built once, when PieceSet is loaded, and
+	 shared read-only by every caller (see PieceSet).
 	*/
 	public static Piece[] getPieces() {
-		// lazy evaluation -- create static array if needed
-		if (Piece.pieces==null) {
-			// use makeFastRotations() to compute all the rotations for each piece
-			Piece.pieces = new Piece[] {
-				makeFastRotations(new Piece(STICK_STR)),
-				makeFastRotations(new Piece(L1_STR)),
-				makeFastRotations(new Piece(L2_STR)),
-				makeFastRotations(new Piece(S1_STR)),
-				makeFastRotations(new Piece(S2_STR)),
-				makeFastRotations(new Piece(SQUARE_STR)),
-				makeFastRotations(new Piece(PYRAMID_STR)),
-			};
-		}
-
-		return Piece.pieces;
+		return PieceSet.STANDARD.getPieces();
 	}
 	
 
@@ -237,7 +477,7 @@ public class Piece {
 	 and Piece.equals() to detect when the rotations have gotten us back
 	 to the first piece.
 	*/
-	private static Piece makeFastRotations(Piece root) {
+	static Piece makeFastRotations(Piece root) {
 		Piece curr = root;
 		while (true) {
 			curr.next = curr.computeNextRotation();
@@ -248,31 +488,43 @@ public class Piece {
 			curr = curr.next;
 		}
 	}
+
+	/**
+	 Links rotations [0, count) into a circular list in that order,
+	 for callers that already know the rotation cycle (see
+	 Polyominoes). Returns the first rotation.
+	*/
+	static Piece linkRotations(Piece[] rotations, int count) {
+		for (int i = 0; i < count; i++)
+			rotations[i].next = rotations[(i + 1) % count];
+		return rotations[0];
+	}
 	
 	
 
 	/**
 	 Given a string of x,y pairs ("0 0	0 1 0 2 1 0"), parses
-	 the points into a TPoint[] array.
+	 the points into a packed int[] array.
 	 (Provided code)
 	*/
-	private static TPoint[] parsePoints(String string) {
-		List<TPoint> points = new ArrayList<TPoint>();
+	private static int[] parsePoints(String string) {
+		int[] points = new int[8];
+		int count = 0;
 		StringTokenizer tok = new StringTokenizer(string);
 		try {
 			while(tok.hasMoreTokens()) {
 				int x = Integer.parseInt(tok.nextToken());
 				int y = Integer.parseInt(tok.nextToken());
 				
-				points.add(new TPoint(x, y));
+				if (count == points.length) points = Arrays.copyOf(points, count * 2);
+				points[count++] = pack(x, y);
 			}
 		}
 		catch (NumberFormatException e) {
 			throw new RuntimeException("Could not parse x,y string:" + string);
 		}
 		
-		// Make an array out of the collection
-		TPoint[] array = points.toArray(new TPoint[0]);
-		return array;
+		// Trim the array to the points read
+		return Arrays.copyOf(points, count);
 	}
 }
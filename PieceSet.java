@@ -0,0 +1,139 @@
+// PieceSet.java
+
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ An immutable set of pieces with all their rotations linked and
+ numbered (see Piece.getId()). A set is built exactly once, in full,
+ before anyone can see it, so any number of threads and games can
+ share its pieces and tables without locking.
+
+ <p>
+ STANDARD holds the 7 tetris pieces that Piece.getPieces() returns.
+ of() makes sets from body strings in the Piece(String) format, and
+ registers them: asking again for the same strings returns the same
+ set rather than building a second one.
+*/
+public final class PieceSet {
+	/** The 12 free pentominoes: F I L N P T U V W X Y Z. */
+	public static final String[] PENTOMINO_STRS = {
+		"1 0  0 1  1 1  1 2  2 2",
+		"0 0  0 1  0 2  0 3  0 4",
+		"0 0  0 1  0 2  0 3  1 0",
+		"0 0  0 1  1 1  1 2  1 3",
+		"0 0  0 1  0 2  1 1  1 2",
+		"0 2  1 2  2 2  1 1  1 0",
+		"0 0  1 0  2 0  0 1  2 1",
+		"0 0  1 0  2 0  0 1  0 2",
+		"0 0  1 0  1 1  2 1  2 2",
+		"1 0  0 1  1 1  2 1  1 2",
+		"0 0  0 1  0 2  0 3  1 2",
+		"0 2  1 2  1 1  1 0  2 0",
+	};
+
+	private static final ConcurrentHashMap<String, PieceSet> REGISTRY = new ConcurrentHashMap<>();
+
+	/** The 7 standard pieces, in the order STICK, L1, L2, S1, S2, SQUARE, PYRAMID. */
+	public static final PieceSet STANDARD = of(Piece.STICK_STR, Piece.L1_STR, Piece.L2_STR,
+			Piece.S1_STR, Piece.S2_STR, Piece.SQUARE_STR, Piece.PYRAMID_STR);
+
+	private final Piece[] roots;	// first rotation of each piece
+	private final Piece[] byId;	// every rotation, indexed by id
+
+	// Numbers the linked rotations of the given first rotations
+	// and sets up their rotation tables.
+	private PieceSet(Piece[] roots) {
+		this.roots = roots;
+		byId = new Piece[roots.length * 4];
+		for (int type = 0; type < roots.length; type++) {
+			Piece root = roots[type];
+			int rotations = 0;
+			Piece curr = root;
+			do {
+				rotations++;
+				curr = curr.fastRotation();
+			} while (curr != root);
+			for (int rotation = 0; rotation < rotations; rotation++) {
+				curr.number(this, type * 4 + rotation, rotation, rotations);
+				byId[type * 4 + rotation] = curr;
+				curr = curr.fastRotation();
+			}
+		}
+	}
+
+	/**
+	 Returns the set of the given piece bodies, each a string of
+	 x y pairs as for Piece(String). The set is built the first time
+	 these bodies are asked for; later calls, from any thread, get
+	 the same set.
+	*/
+	public static PieceSet of(String... bodies) {
+		final String[] copy = bodies.clone();
+		return REGISTRY.computeIfAbsent(key(copy), k -> {
+			Piece[] roots = new Piece[copy.length];
+			for (int i = 0; i < copy.length; i++)
+				roots[i] = Piece.makeFastRotations(new Piece(copy[i]));
+			return new PieceSet(roots);
+		});
+	}
+
+	/**
+	 Returns the set registered under the given name, building it
+	 from the linked first rotations that roots supplies the first
+	 time the name is asked for.
+	*/
+	static PieceSet register(String name, Supplier<Piece[]> roots) {
+		return REGISTRY.computeIfAbsent("#" + name, k -> new PieceSet(roots.get()));
+	}
+
+	/**
+	 Returns the set of the 12 pentominoes.
+	*/
+	public static PieceSet pentominoes() {
+		return of(PENTOMINO_STRS);
+	}
+
+	// The bodies with the spacing evened out, so the same points
+	// written differently register once.
+	private static String key(String[] bodies) {
+		StringBuilder buff = new StringBuilder();
+		for (String body : bodies) {
+			StringTokenizer tok = new StringTokenizer(body);
+			while (tok.hasMoreTokens())
+				buff.append(tok.nextToken()).append(' ');
+			buff.append('|');
+		}
+		return buff.toString();
+	}
+
+	/**
+	 Returns the first rotation of each piece, in the order the
+	 bodies were given. The caller should not modify this array.
+	*/
+	public Piece[] getPieces() {
+		return roots;
+	}
+
+	/**
+	 Returns the number of pieces in the set.
+	*/
+	public int size() {
+		return roots.length;
+	}
+
+	/**
+	 Returns the rotation with the given id, or null if there is none.
+	*/
+	public Piece byId(int id) {
+		return id >= 0 && id < byId.length ? byId[id] : null;
+	}
+
+	/**
+	 Returns one more than the largest id, for sizing tables.
+	*/
+	public int getIdLimit() {
+		return byId.length;
+	}
+}
@@ -192,6 +192,161 @@ public class PieceTest extends TestCase {
 
 	}
 
+	public void testIds() {
+		Piece[] pieces = Piece.getPieces();
+		Set<Integer> seen = new HashSet<>();
+		for (int type = 0; type < pieces.length; type++) {
+			Piece curr = pieces[type];
+			int rotation = 0;
+			do {
+				assertEquals(type * 4 + rotation, curr.getId());
+				assertSame(curr, Piece.byId(curr.getId()));
+				assertTrue(seen.add(curr.getId()));
+				curr = curr.fastRotation();
+				rotation++;
+			} while (curr != pieces[type]);
+		}
+		assertEquals(19, seen.size());
+		assertNull(Piece.byId(Piece.SQUARE * 4 + 1));
+		assertNull(Piece.byId(-1));
+		assertNull(Piece.byId(100));
+		assertEquals(-1, stickR1.getId());
+
+		// canonical rotations still equal pieces made by hand
+		Piece stick = pieces[Piece.STICK];
+		assertTrue(stick.equals(stickR1));
+		assertTrue(stickR2.equals(stick.fastRotation()));
+		assertFalse(stick.equals(stick.fastRotation()));
+		assertEquals(stickR1.hashCode(), stick.hashCode());
+		assertEquals(pyrR3.hashCode(), pieces[Piece.PYRAMID].fastRotation().fastRotation().hashCode());
+		assertTrue(new HashSet<>(Arrays.asList(pieces)).contains(sqr));
+	}
+
+	public void testRowMasks() {
+		assertTrue(Arrays.equals(new long[] {1, 1, 1, 1}, stickR1.getRowMasks()));
+		assertTrue(Arrays.equals(new long[] {15}, stickR2.getRowMasks()));
+		assertTrue(Arrays.equals(new long[] {3, 6}, S1R1.getRowMasks()));
+		assertTrue(Arrays.equals(new long[] {7, 2}, pyrR1.getRowMasks()));
+		assertTrue(Arrays.equals(new long[] {0b111100, 0b10, 0b101, 0b1}, weird1.getRowMasks()));
+
+		// a body off the origin has none
+		assertNull(new Piece("1 1  2 1").getRowMasks());
+	}
+
+	public void testPieceSets() throws Exception {
+		assertSame(PieceSet.STANDARD.getPieces(), Piece.getPieces());
+		assertSame(PieceSet.STANDARD, PieceSet.of(Piece.STICK_STR, Piece.L1_STR, Piece.L2_STR,
+				Piece.S1_STR, Piece.S2_STR, Piece.SQUARE_STR, Piece.PYRAMID_STR));
+		assertEquals(7, PieceSet.STANDARD.size());
+
+		PieceSet pentominoes = PieceSet.pentominoes();
+		assertEquals(12, pentominoes.size());
+		assertSame(pentominoes, PieceSet.of("1 0 0 1 1 1 1 2 2 2", "0 0 0 1 0 2 0 3 0 4", "0 0 0 1 0 2 0 3 1 0",
+				"0 0 0 1 1 1 1 2 1 3", "0 0 0 1 0 2 1 1 1 2", "0 2 1 2 2 2 1 1 1 0", "0 0 1 0 2 0 0 1 2 1",
+				"0 0 1 0 2 0 0 1 0 2", "0 0 1 0 1 1 2 1 2 2", "1 0 0 1 1 1 2 1 1 2", "0 0 0 1 0 2 0 3 1 2",
+				"0 2 1 2 1 1 1 0 2 0"));
+		int rotations = 0;
+		for (Piece root : pentominoes.getPieces()) {
+			Piece curr = root;
+			do {
+				assertSame(pentominoes, curr.getSet());
+				assertSame(curr, pentominoes.byId(curr.getId()));
+				rotations++;
+				curr = curr.fastRotation();
+			} while (curr != root);
+		}
+		assertEquals(4 + 2 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 1 + 4 + 2, rotations);
+
+		// same body in two sets is still equal, same id is not
+		assertFalse(pentominoes.byId(4).equals(Piece.byId(4)));
+		PieceSet mine = PieceSet.of(Piece.SQUARE_STR);
+		assertTrue(mine.getPieces()[0].equals(Piece.getPieces()[Piece.SQUARE]));
+
+		// racing threads all get one set
+		final PieceSet[] got = new PieceSet[8];
+		Thread[] threads = new Thread[got.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int n = i;
+			threads[i] = new Thread(() -> got[n] = PieceSet.of("0 0  1 0  2 0", "0 0  0 1"));
+			threads[i].start();
+		}
+		for (Thread t : threads) t.join();
+		for (PieceSet set : got) assertSame(got[0], set);
+	}
+
+	public void testPackedPoints() {
+		int[] points = {Piece.pack(0, 0), Piece.pack(1, 0), Piece.pack(1, 1), Piece.pack(2, 0)};
+		Piece pyr = Piece.fromPoints(points);
+		assertEquals(pyrR1, pyr);
+		assertEquals(3, pyr.getWidth());
+		assertEquals(2, pyr.getHeight());
+		assertTrue(Arrays.equals(new int[] {0, 0, 0}, pyr.getSkirt()));
+		assertEquals(pyrR2, pyr.computeNextRotation());
+
+		// the piece keeps its own copy
+		points[0] = Piece.pack(5, 5);
+		assertEquals(pyrR1, pyr);
+		assertSame(pyr.getBody(), pyr.getBody());
+		assertEquals(new TPoint(1, 1), pyr.getBody()[2]);
+
+		assertEquals(-3, Piece.packedX(Piece.pack(-3, 7)));
+		assertEquals(7, Piece.packedY(Piece.pack(-3, 7)));
+		assertEquals(-2, Piece.packedY(Piece.pack(4, -2)));
+	}
+
+	public void testRotationTables() {
+		Piece[] pieces = Piece.getPieces();
+		Piece stick = pieces[Piece.STICK];
+		assertEquals(-1, stick.getRotateDx());
+		assertEquals(1, stick.getRotateDy());
+		assertEquals(1, stick.fastRotation().getRotateDx());
+		assertEquals(-1, stick.fastRotation().getRotateDy());
+
+		for (Piece root : pieces) {
+			Piece curr = root;
+			do {
+				Piece next = curr.fastRotation();
+				assertEquals((curr.getWidth() - next.getWidth()) / 2, curr.getRotateDx());
+				assertEquals((curr.getHeight() - next.getHeight()) / 2, curr.getRotateDy());
+				assertEquals(0, curr.getKicks()[0]);
+				curr = next;
+			} while (curr != root);
+		}
+		assertEquals(1, pieces[Piece.SQUARE].getKicks().length);
+		assertEquals(5, pieces[Piece.PYRAMID].getKicks().length);
+
+		// the stick kicks along its length first
+		int[] kicks = stick.getKicks();
+		assertEquals(-1, Piece.packedX(kicks[1]));
+		assertEquals(2, Piece.packedX(kicks[2]));
+
+		// hand-made pieces do not kick
+		assertEquals(0, pyrR1.getRotateDx());
+		assertEquals(1, pyrR1.getKicks().length);
+	}
+
+	public void testPlacements() {
+		Piece stick = Piece.getPieces()[Piece.STICK];
+		Piece.Placements p = stick.getPlacements(5);
+
+		// upright at 5 columns, flat at 2
+		assertEquals(7, p.count);
+		assertSame(stick, p.pieces[0]);
+		assertEquals(4, p.xs[4]);
+		assertSame(stick.fastRotation(), p.pieces[5]);
+		assertEquals(1, p.xs[6]);
+		assertEquals(0, p.skirts[p.skirtStart[6] + 3]);
+
+		assertSame(p, stick.getPlacements(5));
+		assertEquals(10 + 7, stick.getPlacements(10).count);
+		// each width keeps its own table
+		assertSame(p, stick.getPlacements(5));
+		assertSame(stick.getPlacements(10), stick.getPlacements(10));
+
+		// a piece without rotations only places itself
+		assertEquals(3, pyrR1.getPlacements(5).count);
+	}
+
 	public  void testParsingException() {
 		Exception exception  = assertThrows(RuntimeException.class, () -> new Piece("7 7 8-"));
 		String expectedMessage = "Could not parse x,y string:";
@@ -0,0 +1,169 @@
+// Polyominoes.java
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ Generates every free polyomino of a given size -- connected shapes
+ of n blocks, counting rotations and reflections of a shape as the
+ same shape -- as a PieceSet ready for the game.
+
+ <p>
+ Shapes are handled as longs rather than Pieces. A shape is moved to
+ the origin and its w x h bounding box is stored row by row, one bit
+ per cell, with w and h above the cells. A connected shape of n
+ blocks has w + h <= n + 1, so its box holds at most
+ floor((n+1)/2) * ceil((n+1)/2) cells -- up to n = 10, a 5 x 6 box
+ of 30 bits, well under the 40 bits below w and h.
+ A shape's canonical form is the smallest key of its 8 rotations and
+ reflections, so telling shapes apart is a long compare, and the
+ rotation cycle of a piece is found by comparing the keys of its
+ rotations -- no equals() and no hashing of TPoints.
+*/
+public final class Polyominoes {
+	public static final int MAX_SIZE = 10;
+
+	private static final int SIZE_SHIFT = 40;	// w at bits 40-43, h at 44-47
+
+	private Polyominoes() { }
+
+	/**
+	 Returns the set of free polyominoes of n blocks, n from 1 to
+	 MAX_SIZE. Each piece's rotations are linked as in getPieces().
+	 The set is built once and registered, like PieceSet.of().
+	*/
+	public static PieceSet free(final int n) {
+		if (n < 1 || n > MAX_SIZE)
+			throw new RuntimeException("polyomino size must be 1 to " + MAX_SIZE + ", got " + n);
+		return PieceSet.register("free polyominoes " + n, () -> build(n));
+	}
+
+	/**
+	 Returns the canonical keys of the free polyominoes of n blocks,
+	 in ascending order. Each size is grown from the one below:
+	 every way of adding a block next to a shape, canonicalized.
+	*/
+	static long[] enumerate(int n) {
+		long[] shapes = { canonical(new int[] {0}, new int[] {0}, 1) };
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		for (int size = 2; size <= n; size++) {
+			HashSet<Long> grown = new HashSet<Long>();
+			for (long shape : shapes) {
+				decode(shape, xs, ys);
+				int count = size - 1;
+				for (int i = 0; i < count; i++) {
+					for (int d = 0; d < 4; d++) {
+						int nx = xs[i] + (d == 0 ? 1 : d == 1 ? -1 : 0);
+						int ny = ys[i] + (d == 2 ? 1 : d == 3 ? -1 : 0);
+						if (contains(xs, ys, count, nx, ny)) continue;
+						xs[count] = nx;
+						ys[count] = ny;
+						grown.add(canonical(xs, ys, size));
+					}
+				}
+			}
+			shapes = new long[grown.size()];
+			int i = 0;
+			for (long shape : grown) shapes[i++] = shape;
+			Arrays.sort(shapes);
+		}
+		return shapes;
+	}
+
+	// Builds the linked rotations of every shape of n blocks.
+	private static Piece[] build(int n) {
+		long[] shapes = enumerate(n);
+		Piece[] roots = new Piece[shapes.length];
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		Piece[] rotations = new Piece[4];
+		for (int s = 0; s < shapes.length; s++) {
+			long key = shapes[s];
+			int count = 0;
+			do {
+				decode(key, xs, ys);
+				rotations[count++] = toPiece(xs, ys, n);
+				rotate(xs, ys, n);
+				key = encode(xs, ys, n);
+			} while (key != shapes[s]);
+			roots[s] = Piece.linkRotations(rotations, count);
+		}
+		return roots;
+	}
+
+	private static Piece toPiece(int[] xs, int[] ys, int n) {
+		int[] points = new int[n];
+		for (int i = 0; i < n; i++)
+			points[i] = Piece.pack(xs[i], ys[i]);
+		return Piece.fromPoints(points);
+	}
+
+	private static boolean contains(int[] xs, int[] ys, int count, int x, int y) {
+		for (int i = 0; i < count; i++) {
+			if (xs[i] == x && ys[i] == y) return true;
+		}
+		return false;
+	}
+
+	/**
+	 Key of the shape moved to the origin -- see the class comment.
+	*/
+	static long encode(int[] xs, int[] ys, int n) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, xs[i]);
+			maxX = Math.max(maxX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		int w = maxX - minX + 1;
+		int h = maxY - minY + 1;
+		long key = ((long) h << (SIZE_SHIFT + 4)) | ((long) w << SIZE_SHIFT);
+		for (int i = 0; i < n; i++)
+			key |= 1L << ((ys[i] - minY) * w + xs[i] - minX);
+		return key;
+	}
+
+	/**
+	 Reads the cells of a key into xs/ys, ordered by row and then
+	 column. Returns the number of cells.
+	*/
+	static int decode(long key, int[] xs, int[] ys) {
+		int w = (int) (key >>> SIZE_SHIFT) & 15;
+		long cells = key & ((1L << SIZE_SHIFT) - 1);
+		int count = 0;
+		while (cells != 0) {
+			int bit = Long.numberOfTrailingZeros(cells);
+			xs[count] = bit % w;
+			ys[count] = bit / w;
+			count++;
+			cells &= cells - 1;
+		}
+		return count;
+	}
+
+	// Rotates 90 degrees counter-clockwise, like computeNextRotation().
+	private static void rotate(int[] xs, int[] ys, int n) {
+		for (int i = 0; i < n; i++) {
+			int x = xs[i];
+			xs[i] = -ys[i];
+			ys[i] = x;
+		}
+	}
+
+	// Smallest key over the 4 rotations of the shape and its mirror image.
+	// Leaves the shape as it was.
+	private static long canonical(int[] xs, int[] ys, int n) {
+		long best = Long.MAX_VALUE;
+		for (int mirror = 0; mirror < 2; mirror++) {
+			for (int r = 0; r < 4; r++) {
+				best = Math.min(best, encode(xs, ys, n));
+				rotate(xs, ys, n);
+			}
+			for (int i = 0; i < n; i++) xs[i] = -xs[i];
+		}
+		return best;
+	}
+}
@@ -0,0 +1,61 @@
+import junit.framework.TestCase;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+  Unit test for Polyominoes.
+ */
+public class PolyominoesTest extends TestCase {
+
+	public void testCounts() {
+		int[] expected = {1, 1, 2, 5, 12, 35, 108, 369, 1285, 4655};
+		for (int n = 1; n <= Polyominoes.MAX_SIZE; n++)
+			assertEquals(expected[n - 1], Polyominoes.enumerate(n).length);
+	}
+
+	public void testTetrominoes() {
+		PieceSet set = Polyominoes.free(4);
+		assertSame(set, Polyominoes.free(4));
+		assertEquals(5, set.size());
+
+		// every free tetromino is a standard piece or the mirror of one
+		int rotations = 0;
+		for (Piece root : set.getPieces()) {
+			Piece curr = root;
+			do {
+				assertEquals(4, curr.getBody().length);
+				assertSame(set, curr.getSet());
+				assertEquals(curr, curr.computeNextRotation().computeNextRotation()
+						.computeNextRotation().computeNextRotation());
+				assertEquals(curr.computeNextRotation(), curr.fastRotation());
+				rotations++;
+				curr = curr.fastRotation();
+			} while (curr != root);
+			boolean found = false;
+			for (Piece standard : Piece.getPieces()) {
+				Piece s = standard;
+				do {
+					found |= s.equals(root);
+					s = s.fastRotation();
+				} while (s != standard);
+			}
+			assertTrue(found);
+		}
+		// I 2, O 1, T 4, S 2, L 4
+		assertEquals(13, rotations);
+	}
+
+	public void testPlayable() {
+		PieceSet set = Polyominoes.free(7);
+		Board board = new Board(12, 30);
+		Brain brain = new DefaultBrain();
+		for (int i = 0; i < 15; i++) {
+			Brain.Move move = brain.bestMove(board, set.getPieces()[i * 7 % set.size()], 26, null);
+			assertNotNull(move);
+			assertTrue(board.place(move.piece, move.x, move.y) <= Board.PLACE_ROW_FILLED);
+			board.clearRows();
+			board.commit();
+		}
+		assertThrows(RuntimeException.class, () -> Polyominoes.free(11));
+	}
+}
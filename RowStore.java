@@ -0,0 +1,127 @@
+// RowStore.java
+
+/**
+ The cell storage behind a Board -- one bit mask per row.
+ Board keeps the heights, widths and undo journal; a RowStore
+ just holds the bits and knows how to move whole rows around.
+ forWidth() picks the implementation that suits the board width,
+ so each width gets a tight code path:
+ <ul>
+ <li>NarrowRowStore -- up to 64 columns, one long per row
+ <li>WideRowStore -- any width, several words per row
+ <li>OffHeapRowStore -- any width, rows in a direct buffer (see BoardPool)
+ </ul>
+ Storage is materialized lazily: only rows below capacity exist,
+ and ensureRows() grows it in chunks as the stack gets taller.
+ Rows at or above capacity read as empty.
+*/
+abstract class RowStore {
+	final int width;
+	final int height;
+	final int words;		// 64-bit words per row
+	final long lastWordMask;	// valid bits of the last word of a row
+	int capacity;			// rows materialized so far
+
+	static final int ROW_CHUNK = 16;
+
+	RowStore(int width, int height) {
+		this.width = width;
+		this.height = height;
+		words = (width + 63) >>> 6;
+		lastWordMask = (width & 63) == 0 ? -1L : (1L << (width & 63)) - 1;
+		capacity = Math.min(height, ROW_CHUNK);
+	}
+
+	/**
+	 Returns the storage best suited to a board of the given size.
+	*/
+	static RowStore forWidth(int width, int height) {
+		if (width <= 64)
+			return new NarrowRowStore(width, height);
+		return new WideRowStore(width, height);
+	}
+
+	/**
+	 Makes sure rows [0, rows) are materialized, growing the
+	 storage to the next whole chunk (capped at the height).
+	*/
+	void ensureRows(int rows) {
+		if (rows > capacity) {
+			int chunks = (rows + ROW_CHUNK - 1) / ROW_CHUNK;
+			capacity = Math.min(height, chunks * ROW_CHUNK);
+			grow(capacity);
+		}
+	}
+
+	/**
+	 Enlarges the storage to hold newCapacity rows.
+	*/
+	abstract void grow(int newCapacity);
+
+	/**
+	 Returns a store holding rows [0, n) of this one, with capacity
+	 of at least n.
+	 Storage may be shared: after the call neither store writes to
+	 the shared part, so the result can be read while this one keeps
+	 changing. Must be called by the thread that owns this store.
+	*/
+	abstract RowStore share(int n);
+
+	/**
+	 Returns word w of row y -- bit i is column w*64 + i.
+	*/
+	abstract long word(int y, int w);
+
+	/**
+	 Returns true if cell (x, y) is filled. x, y must be in bounds.
+	*/
+	abstract boolean get(int x, int y);
+
+	/**
+	 Fills cell (x, y) -- y must be below capacity.
+	*/
+	abstract void set(int x, int y);
+
+	abstract void unset(int x, int y);
+
+	/**
+	 Fills the cells of bits in word w of row y -- y must be
+	 below capacity.
+	*/
+	abstract void orWord(int y, int w, long bits);
+
+	/**
+	 Returns true if every cell of the row is filled.
+	*/
+	abstract boolean isFull(int y);
+
+	/**
+	 Deletes the full rows among [first, top] by sliding the rows
+	 of [first, end) down, and blanks the rows freed at the top.
+	 widths is moved alongside; a row is full when its width equals
+	 the board width.
+	*/
+	abstract void removeRows(int first, int top, int end, int[] widths);
+
+	/**
+	 Saves rows [from, to) before removeRows() touches them.
+	 Saves nest like a stack, one per removeRows().
+	*/
+	abstract void saveRows(int from, int to);
+
+	/**
+	 Puts back the rows taken by the latest saveRows(from, to).
+	 widths must already hold the restored row widths.
+	*/
+	abstract void restoreRows(int from, int to, int[] widths);
+
+	/**
+	 Forgets every saveRows() not yet restored.
+	*/
+	abstract void clearSaved();
+
+	/**
+	 Blanks rows [0, n).
+	*/
+	abstract void wipe(int n);
+}
@@ -0,0 +1,39 @@
+/*
+ Reruns every BoardTest on the multi-word WideRowStore,
+ which boards wider than 64 columns use.
+ */
+public class WideBoardTest extends BoardTest {
+
+	@Override
+	protected RowStore newRows(int width, int height) {
+		return new WideRowStore(width, height);
+	}
+
+	// undo after a snapshot must still find the rows a clear moved
+	public void testUndoAfterSnapshot() {
+		Piece stick = Piece.getPieces()[Piece.STICK].fastRotation();
+		Piece sqr = Piece.getPieces()[Piece.SQUARE];
+		Board wide = new Board(100, 20, newRows(100, 20));
+		wide.setDebugMode(true);
+		wide.place(sqr, 0, 0);
+		wide.commit();
+		String before = wide.toString();
+
+		wide.pushTransaction();
+		for (int x = 2; x < 98; x += 4) {
+			wide.place(stick, x, 0);
+			wide.commit();
+		}
+		wide.place(sqr, 98, 0);
+		assertEquals(1, wide.clearRows());
+		wide.commit();
+		assertEquals(Board.PLACE_OK, wide.place(sqr, 2, 0));
+		BoardSnapshot snap = wide.snapshot();
+		String during = wide.toString();
+		wide.popTransaction();
+
+		assertEquals(before, wide.toString());
+		wide.sanityCheck();
+		assertEquals(during, snap.toString());
+	}
+}
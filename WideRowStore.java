@@ -0,0 +1,207 @@
+// WideRowStore.java
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ RowStore for boards of any width. Each row lives in its own slot
+ array of words and rows[] points at the slots, so removing rows
+ moves slot references instead of cells -- the cost of a clear does
+ not grow with the board width.
+
+ <p>
+ Slots are copy-on-write so share() can hand them out without
+ copying: every slot carries the stamp of the store that made it
+ in its last word, and a store only writes slots with its own stamp.
+ Others are copied on first write, and the copy takes the old slot's
+ place in the saved slot orders too.
+*/
+class WideRowStore extends RowStore {
+	private long[][] rows;		// rows[y] holds the words of row y
+	private long[][] saved;		// slot order captured by saveRows()
+	private int savedSize;
+	private long[][] cleared;	// scratch for removeRows()
+
+	private static final AtomicLong STAMPS = new AtomicLong();
+	private long stamp;		// stamp of the slots this store may write
+	private boolean owns;		// true once a slot carries our stamp
+
+	WideRowStore(int width, int height) {
+		super(width, height);
+		stamp = STAMPS.incrementAndGet();
+		rows = new long[capacity][];
+		for (int y = 0; y < capacity; y++)
+			rows[y] = newSlot();
+		saved = new long[16][];
+		savedSize = 0;
+		cleared = new long[capacity][];
+	}
+
+	@Override
+	RowStore share(int n) {
+		WideRowStore copy = new WideRowStore(width, height, Arrays.copyOf(rows, n));
+		// our slots are now visible to the copy -- stop writing them
+		if (owns) {
+			stamp = STAMPS.incrementAndGet();
+			owns = false;
+		}
+		return copy;
+	}
+
+	// Makes a store on the given slots, none of which it owns.
+	private WideRowStore(int width, int height, long[][] slots) {
+		super(width, height);
+		stamp = STAMPS.incrementAndGet();
+		capacity = slots.length;
+		rows = slots;
+		saved = new long[16][];
+		savedSize = 0;
+		cleared = new long[capacity][];
+	}
+
+	// A blank slot stamped as ours.
+	private long[] newSlot() {
+		long[] slot = new long[words + 1];
+		slot[words] = stamp;
+		owns = true;
+		return slot;
+	}
+
+	// Slot of row y, copied first if it is not ours.
+	private long[] writable(int y) {
+		long[] slot = rows[y];
+		if (slot[words] != stamp) {
+			slot = Arrays.copyOf(slot, words + 1);
+			slot[words] = stamp;
+			owns = true;
+			replace(y, slot);
+		}
+		return slot;
+	}
+
+	// Puts slot in place of row y's slot, in rows[] and in the saved
+	// slot orders, so an undo puts back the row as it is now -- not
+	// as it was when the old slot was shared.
+	private void replace(int y, long[] slot) {
+		long[] old = rows[y];
+		rows[y] = slot;
+		for (int i = 0; i < savedSize; i++) {
+			if (saved[i] == old) saved[i] = slot;
+		}
+	}
+
+	@Override
+	void grow(int newCapacity) {
+		int old = rows.length;
+		rows = Arrays.copyOf(rows, newCapacity);
+		for (int y = old; y < newCapacity; y++)
+			rows[y] = newSlot();
+		cleared = new long[newCapacity][];
+	}
+
+	@Override
+	long word(int y, int w) {
+		return y < rows.length ? rows[y][w] : 0;
+	}
+
+	@Override
+	boolean get(int x, int y) {
+		return y < rows.length && (rows[y][x >>> 6] & (1L << x)) != 0;
+	}
+
+	@Override
+	void set(int x, int y) {
+		writable(y)[x >>> 6] |= 1L << x;
+	}
+
+	@Override
+	void unset(int x, int y) {
+		writable(y)[x >>> 6] &= ~(1L << x);
+	}
+
+	@Override
+	void orWord(int y, int w, long bits) {
+		writable(y)[w] |= bits;
+	}
+
+	@Override
+	boolean isFull(int y) {
+		long[] row = rows[y];
+		for (int w = 0; w < words - 1; w++) {
+			if (row[w] != -1L)
+				return false;
+		}
+		return row[words - 1] == lastWordMask;
+	}
+
+	@Override
+	void removeRows(int first, int top, int end, int[] widths) {
+		// slide the surviving slots down, recycle the cleared ones on top
+		int toRow = first;
+		int count = 0;
+		for (int i = first; i < end; i++) {
+			if (i > top || widths[i] != width) {
+				rows[toRow] = rows[i];
+				widths[toRow] = widths[i];
+				toRow++;
+			} else {
+				cleared[count++] = rows[i];
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			long[] slot = cleared[i];
+			if (slot[words] == stamp)
+				Arrays.fill(slot, 0, words, 0L);
+			else
+				slot = newSlot();
+			rows[toRow + i] = slot;
+			cleared[i] = null;
+			widths[toRow + i] = 0;
+		}
+	}
+
+	/**
+	 Only the slot order is saved: moved rows keep their contents,
+	 and the cleared ones are known to be full.
+	*/
+	@Override
+	void saveRows(int from, int to) {
+		int count = to - from;
+		if (savedSize + count > saved.length)
+			saved = Arrays.copyOf(saved, Math.max(saved.length * 2, savedSize + count));
+		System.arraycopy(rows, from, saved, savedSize, count);
+		savedSize += count;
+	}
+
+	@Override
+	void restoreRows(int from, int to, int[] widths) {
+		savedSize -= to - from;
+		System.arraycopy(saved, savedSize, rows, from, to - from);
+		Arrays.fill(saved, savedSize, savedSize + to - from, null);
+		// the cleared rows were blanked for reuse -- refill them
+		for (int y = from; y < to; y++) {
+			if (widths[y] == width) {
+				long[] slot = rows[y][words] == stamp ? rows[y] : newSlot();
+				Arrays.fill(slot, 0, words - 1, -1L);
+				slot[words - 1] = lastWordMask;
+				replace(y, slot);
+			}
+		}
+	}
+
+	@Override
+	void clearSaved() {
+		Arrays.fill(saved, 0, savedSize, null);
+		savedSize = 0;
+	}
+
+	@Override
+	void wipe(int n) {
+		for (int y = 0; y < Math.min(n, rows.length); y++) {
+			if (rows[y][words] == stamp)
+				Arrays.fill(rows[y], 0, words, 0L);
+			else
+				rows[y] = newSlot();
+		}
+	}
+}